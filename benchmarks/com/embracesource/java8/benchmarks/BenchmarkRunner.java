@@ -0,0 +1,31 @@
+package com.embracesource.java8.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package with the GC profiler attached, so every result comes
+ * with its allocation rate (gc.alloc.rate.norm is the number of bytes allocated per operation).
+ *
+ * The benchmarks live outside of src because they need jmh-core and jmh-generator-annprocess
+ * (1.x) on the classpath; compile them together with src and the annotation processor, then run
+ * e.g. {@code java -cp <classes>:<jmh jars> com.embracesource.java8.benchmarks.BenchmarkRunner Sort}.
+ * The first argument is an optional regular expression selecting the benchmarks to run.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.CSV)
+				.result("jmh-result.csv")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,56 @@
+package com.embracesource.java8.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.embracesource.java8.inaction.WorkingWithStreams;
+
+/**
+ * getDistinctLetter3: split("") and flatMap over a list of random words.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistinctLetterBenchmark {
+
+	@Param({ "100", "10000", "1000000" })
+	public int words;
+
+	private final WorkingWithStreams streams = new WorkingWithStreams();
+	private List<String> input;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		input = new ArrayList<>(words);
+		for (int i = 0; i < words; i++) {
+			char[] word = new char[3 + random.nextInt(8)];
+			for (int j = 0; j < word.length; j++) {
+				word[j] = (char) ('a' + random.nextInt(26));
+			}
+			input.add(new String(word));
+		}
+	}
+
+	@Benchmark
+	public List<String> distinctLetter3() {
+		return streams.getDistinctLetter3(input);
+	}
+}
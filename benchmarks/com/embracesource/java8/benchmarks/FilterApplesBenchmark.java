@@ -0,0 +1,107 @@
+package com.embracesource.java8.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.embracesource.java8.Apple;
+import com.embracesource.java8.inaction.LambaExpressions;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization.ApplePredicate;
+
+/**
+ * The filterApples attempts of chapter 2 and the generic filters of chapters 2 and 3,
+ * all selecting the red apples heavier than 150 g where the signature allows it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterApplesBenchmark {
+	private static final String[] COLORS = { "red", "green", "yellow" };
+
+	// PassingCodeWithBehaviorParameterization's own strategies are inner classes of an
+	// instance that can't be created standalone, so the same strategy is declared here.
+	static class AppleRedAndHeavyPredicate implements ApplePredicate {
+		@Override
+		public boolean test(Apple apple) {
+			return "red".equals(apple.getColor()) && apple.getWeight() > 150;
+		}
+	}
+
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private List<Apple> inventory;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		inventory = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			inventory.add(new Apple(COLORS[random.nextInt(COLORS.length)], 50 + random.nextInt(250)));
+		}
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesByColor() {
+		return PassingCodeWithBehaviorParameterization.filterApplesByColor(inventory, "red");
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesByWeight() {
+		return PassingCodeWithBehaviorParameterization.filterApplesByWeight(inventory, 150);
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesWithFlag() {
+		return PassingCodeWithBehaviorParameterization.filterApples(inventory, "red", 150, true);
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesWithStrategyClass() {
+		return PassingCodeWithBehaviorParameterization.filterApples(inventory, new AppleRedAndHeavyPredicate());
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesWithAnonymousClass() {
+		return PassingCodeWithBehaviorParameterization.filterApples(inventory, new ApplePredicate() {
+			@Override
+			public boolean test(Apple apple) {
+				return "red".equals(apple.getColor()) && apple.getWeight() > 150;
+			}
+		});
+	}
+
+	@Benchmark
+	public List<Apple> filterApplesWithLambda() {
+		return PassingCodeWithBehaviorParameterization.filterApples(inventory,
+				(Apple apple) -> "red".equals(apple.getColor()) && apple.getWeight() > 150);
+	}
+
+	@Benchmark
+	public List<Apple> genericFilter() {
+		return PassingCodeWithBehaviorParameterization.filter(inventory,
+				(Apple apple) -> "red".equals(apple.getColor()) && apple.getWeight() > 150);
+	}
+
+	@Benchmark
+	public List<Apple> genericFilterWithJavaUtilPredicate() {
+		return LambaExpressions.filter(inventory, (Apple apple) -> "red".equals(apple.getColor()) && apple.getWeight() > 150);
+	}
+}
@@ -0,0 +1,68 @@
+package com.embracesource.java8.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.embracesource.java8.inaction.IntroducingStreams.Dish;
+import com.embracesource.java8.inaction.WorkingWithStreams;
+
+/**
+ * Boxed reduce (getSummary1, getSummary2) against the mapToInt sum of getSumCalories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReduceBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private final WorkingWithStreams streams = new WorkingWithStreams();
+	private List<Integer> numbers;
+	private List<Dish> menu;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		numbers = new ArrayList<>(size);
+		menu = new ArrayList<>(size);
+		Dish.Type[] types = Dish.Type.values();
+		for (int i = 0; i < size; i++) {
+			int calories = random.nextInt(1000);
+			numbers.add(calories);
+			menu.add(new Dish("dish" + i, random.nextBoolean(), calories, types[random.nextInt(types.length)]));
+		}
+	}
+
+	@Benchmark
+	public int summaryWithLambda() {
+		return streams.getSummary1(numbers);
+	}
+
+	@Benchmark
+	public int summaryWithMethodReference() {
+		return streams.getSummary2(numbers);
+	}
+
+	@Benchmark
+	public int sumCaloriesMapToInt() {
+		return streams.getSumCalories(menu);
+	}
+}
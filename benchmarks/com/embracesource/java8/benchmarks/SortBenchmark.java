@@ -0,0 +1,56 @@
+package com.embracesource.java8.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The UUID sort of AccessDefaultMethodofInterface.interfaceOfStream, sequential vs parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private List<String> values;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(new UUID(random.nextLong(), random.nextLong()).toString());
+		}
+	}
+
+	// sorted().count() is not used here: from Java 9 on, count() of a SIZED stream skips the sort.
+	@Benchmark
+	public Object[] sequentialSort() {
+		return values.stream().sorted().toArray();
+	}
+
+	@Benchmark
+	public Object[] parallelSort() {
+		return values.parallelStream().sorted().toArray();
+	}
+}
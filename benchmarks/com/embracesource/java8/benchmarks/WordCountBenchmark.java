@@ -0,0 +1,79 @@
+package com.embracesource.java8.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.embracesource.java8.inaction.WorkingWithStreams;
+
+/**
+ * getNumberOfWordsInAFile over a generated data.txt in the working directory.
+ * An existing data.txt is moved aside for the duration of the run and restored afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WordCountBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int lines;
+
+	private final WorkingWithStreams streams = new WorkingWithStreams();
+	private final Path data = Paths.get("data.txt");
+	private final Path backup = Paths.get("data.txt.bak");
+
+	@Setup
+	public void setUp() throws IOException {
+		if (Files.exists(data)) {
+			Files.move(data, backup, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Random random = new Random(42);
+		try (BufferedWriter writer = Files.newBufferedWriter(data, Charset.defaultCharset())) {
+			for (int i = 0; i < lines; i++) {
+				int words = 1 + random.nextInt(12);
+				for (int j = 0; j < words; j++) {
+					if (j > 0) {
+						writer.write(' ');
+					}
+					writer.write("word" + random.nextInt(50000));
+				}
+				writer.newLine();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(data);
+		if (Files.exists(backup)) {
+			Files.move(backup, data);
+		}
+	}
+
+	@Benchmark
+	public long numberOfWordsInAFile() {
+		return streams.getNumberOfWordsInAFile();
+	}
+}
@@ -1,6 +1,7 @@
 package com.embracesource.java8;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -146,6 +147,27 @@ public class AccessDefaultMethodofInterface {
 		long millis1 = TimeUnit.NANOSECONDS.toMillis(t11 - t00);
 		System.out.println(String.format("parallel sort took: %d ms", millis1));
 		// parallel sort took: 353 ms
+
+		long t000 = System.nanoTime();
+		long count2 = StringRadixSort.sorted(values.parallelStream()).count();
+		System.out.println(count2);
+		long t111 = System.nanoTime();
+		long millis2 = TimeUnit.NANOSECONDS.toMillis(t111 - t000);
+		System.out.println(String.format("parallel radix sort took: %d ms", millis2));
+
+		// keys that share a long prefix, like paths or URLs, sort the same as with Arrays.sort
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+		    prefix.append('/');
+		}
+		String[] paths = new String[100];
+		for (int i = 0; i < paths.length; i++) {
+		    paths[i] = prefix + Integer.toString(i * 7919 % 1000, 36);
+		}
+		String[] expected = paths.clone();
+		Arrays.sort(expected);
+		StringRadixSort.sort(paths);
+		System.out.println(Arrays.equals(expected, paths));    // true
 	}
 	
 	public static void interfaceOfMap() {
@@ -175,8 +197,20 @@ public class AccessDefaultMethodofInterface {
 		System.out.println(map.get(9));             // val9
 		map.merge(9, "concat", (value, newValue) -> value.concat(newValue));
 		System.out.println(map.get(9));             // val9concat
+
+		// the same operations with int keys, without boxing, safe to share between threads
+		IntObjectConcurrentMap<String> intMap = new IntObjectConcurrentMap<>();
+		for (int i = 0; i < 10; i++) {
+		    intMap.putIfAbsent(i, "val" + i);
+		}
+		intMap.computeIfPresent(3, (num, val) -> val + num);
+		System.out.println(intMap.get(3));          // val33
+		intMap.computeIfAbsent(23, num -> "val" + num);
+		System.out.println(intMap.containsKey(23)); // true
+		intMap.merge(9, "concat", (value, newValue) -> value.concat(newValue));
+		System.out.println(intMap.get(9));          // val9concat
 	}
-	
+
 	public static void main(String[] args) {
 //		interfaceOfPredicate();
 //		interfaceOfFunction();
@@ -1,7 +1,7 @@
 package com.embracesource.java8;
 
 public class Apple {
-	private String color;
+	private int colorCode;	// see ColorDictionary
 	
 	private int weight;
 	
@@ -16,16 +16,20 @@ public class Apple {
 	
 	public Apple(String color, int weight) {
 		super();
-		this.color = color;
+		this.colorCode = ColorDictionary.codeOf(color);
 		this.weight = weight;
 	}
 
 	public String getColor() {
-		return color;
+		return ColorDictionary.colorOf(colorCode);
 	}
 
 	public void setColor(String color) {
-		this.color = color;
+		this.colorCode = ColorDictionary.codeOf(color);
+	}
+
+	public int getColorCode() {
+		return colorCode;
 	}
 
 	public int getWeight() {
@@ -0,0 +1,68 @@
+package com.embracesource.java8;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns apple colors to small int codes, so that an {@link Apple} stores an int instead of a
+ * String and a color predicate compares ints instead of calling String.equals for every apple.
+ *
+ * Codes are handed out in the order colors are first seen and are never reused; {@link #NONE}
+ * is the code of the null color. There are only ever a handful of colors, so the dictionary
+ * keeps all of them for the lifetime of the JVM.
+ */
+public final class ColorDictionary {
+	public static final int NONE = 0;
+
+	private static final ConcurrentMap<String, Integer> CODES = new ConcurrentHashMap<>();
+	private static volatile String[] colors = new String[16];	// by code, NONE is null
+	private static int size = 1;	// guarded by the class
+
+	public static final int RED = codeOf("red");
+	public static final int GREEN = codeOf("green");
+
+	private ColorDictionary() {
+	}
+
+	// The code of the color, which is added to the dictionary if it's new.
+	public static int codeOf(String color) {
+		if (color == null) {
+			return NONE;
+		}
+		Integer code = CODES.get(color);
+		return code != null ? code : intern(color);
+	}
+
+	// The code of the color, or -1 if no apple has ever had that color.
+	public static int lookup(String color) {
+		if (color == null) {
+			return NONE;
+		}
+		Integer code = CODES.get(color);
+		return code != null ? code : -1;
+	}
+
+	public static String colorOf(int code) {
+		return colors[code];
+	}
+
+	public static synchronized int size() {
+		return size;
+	}
+
+	private static synchronized int intern(String color) {
+		Integer code = CODES.get(color);
+		if (code != null) {
+			return code;
+		}
+		if (size == colors.length) {
+			colors = Arrays.copyOf(colors, size * 2);
+		}
+		int newCode = size++;
+		colors[newCode] = color;
+		// published after the array, so whoever sees the code sees the color
+		CODES.put(color, newCode);
+		return newCode;
+	}
+}
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.Month;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.time.temporal.ChronoField;
@@ -97,6 +98,13 @@ public class DateAPI {
 		LocalDateTime parsed = LocalDateTime.parse("Nov 03, 2014 - 07:13", formatter);
 		String string = formatter.format(parsed);
 		System.out.println(string);     // Nov 03, 2014 - 07:13
+
+		// A fixed-width pattern can be precompiled: parsing then reads the digits in place
+		// and falls back to the DateTimeFormatter only for input it can't handle.
+		FixedDateTimeFormat fixedFormat = FixedDateTimeFormat.ofPattern("MMM dd, yyyy - HH:mm");
+		LocalDateTime fastParsed = fixedFormat.parse("Nov 03, 2014 - 07:13");
+		System.out.println(fixedFormat.format(fastParsed));     // Nov 03, 2014 - 07:13
+		System.out.println(fixedFormat.parseEpochMillis("Nov 03, 2014 - 07:13", ZoneOffset.UTC));     // 1414998780000
 	}
 	
 	public static void main(String[] args) {
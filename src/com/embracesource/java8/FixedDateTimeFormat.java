@@ -0,0 +1,422 @@
+package com.embracesource.java8;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A precompiled parser/formatter for fixed-width date-time patterns such as
+ * "MMM dd, yyyy - HH:mm" or "uuuu-MM-dd'T'HH:mm:ss".
+ *
+ * The pattern is compiled once into a list of fields at fixed positions, so parsing
+ * reads the digits straight from a CharSequence or an ASCII byte range into ints and
+ * computes epoch millis without the field maps DateTimeFormatter.parse builds.
+ * Patterns with letters other than y, u, M, MM, MMM, d, H, m, s and S (as yyyy, uuuu,
+ * MM, MMM, dd, HH, mm, ss, SSS), input that doesn't fit the layout and values that
+ * need resolving (such as February 30) all go to the equivalent DateTimeFormatter,
+ * so results and exceptions are the same as with the formatter.
+ */
+public final class FixedDateTimeFormat {
+	public static final FixedDateTimeFormat ISO_LOCAL_DATE = ofPattern("uuuu-MM-dd", Locale.ROOT);
+	public static final FixedDateTimeFormat ISO_LOCAL_DATE_TIME = ofPattern("uuuu-MM-dd'T'HH:mm:ss", Locale.ROOT);
+	public static final FixedDateTimeFormat ISO_LOCAL_DATE_TIME_MILLIS = ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS", Locale.ROOT);
+
+	private static final int LITERAL = 0, YEAR = 1, MONTH = 2, MONTH_TEXT = 3, DAY = 4, HOUR = 5, MINUTE = 6,
+			SECOND = 7, MILLI = 8;
+	private static final long INVALID = -1;
+
+	private final DateTimeFormatter formatter;
+	private final boolean compiled;
+	private final boolean hasTime;
+	private final int length;
+	private final int[] kinds;
+	private final int[] positions;
+	private final int[] widths;
+	private final char[] literals;
+	private final String[] monthNames;	// index 1 to 12
+
+	private FixedDateTimeFormat(String pattern, Locale locale) {
+		this.formatter = DateTimeFormatter.ofPattern(pattern, locale);
+		List<int[]> elements = new ArrayList<>();	// kind, position, width, literal
+		boolean ok = compile(pattern, elements);
+		String[] names = null;
+		int textWidth = 0;
+		if (ok && contains(elements, MONTH_TEXT)) {
+			names = new String[13];
+			DateTimeFormatter months = DateTimeFormatter.ofPattern("MMM", locale);
+			for (int m = 1; m <= 12; m++) {
+				names[m] = months.format(LocalDate.of(2000, m, 1));
+				if (textWidth != 0 && names[m].length() != textWidth) {
+					ok = false;	// month names of different lengths don't fit a fixed layout
+				}
+				textWidth = names[m].length();
+			}
+		}
+		ok = ok && contains(elements, YEAR) && (contains(elements, MONTH) || contains(elements, MONTH_TEXT))
+				&& contains(elements, DAY);
+		int size = elements.size();
+		kinds = new int[size];
+		positions = new int[size];
+		widths = new int[size];
+		literals = new char[size];
+		int position = 0;
+		for (int i = 0; i < size; i++) {
+			int[] e = elements.get(i);
+			kinds[i] = e[0];
+			positions[i] = position;
+			widths[i] = e[0] == MONTH_TEXT ? textWidth : e[2];
+			literals[i] = (char) e[3];
+			position += widths[i];
+		}
+		this.length = position;
+		this.monthNames = names;
+		this.compiled = ok;
+		this.hasTime = contains(elements, HOUR);
+	}
+
+	public static FixedDateTimeFormat ofPattern(String pattern) {
+		return new FixedDateTimeFormat(pattern, Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	public static FixedDateTimeFormat ofPattern(String pattern, Locale locale) {
+		return new FixedDateTimeFormat(pattern, locale);
+	}
+
+	public DateTimeFormatter getFormatter() {
+		return formatter;
+	}
+
+	// false when every call goes to the DateTimeFormatter
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	public LocalDateTime parse(CharSequence text) {
+		long fields = compiled && hasTime ? parseFields(text, null, 0, text.length()) : INVALID;
+		if (fields == INVALID) {
+			return LocalDateTime.parse(text, formatter);
+		}
+		return LocalDateTime.of(year(fields), month(fields), day(fields), hour(fields), minute(fields), second(fields),
+				milli(fields) * 1000000);
+	}
+
+	/**
+	 * Parses straight to epoch millis; a pattern without time of day yields the start of the day.
+	 */
+	public long parseEpochMillis(CharSequence text, ZoneOffset offset) {
+		long fields = compiled ? parseFields(text, null, 0, text.length()) : INVALID;
+		if (fields == INVALID) {
+			return fallbackEpochMillis(text, offset);
+		}
+		return epochMillis(fields, offset);
+	}
+
+	/**
+	 * Parses the ASCII bytes {@code bytes[from, from + length)}, for instance a field of a log line.
+	 */
+	public long parseEpochMillis(byte[] bytes, int from, int length, ZoneOffset offset) {
+		long fields = compiled ? parseFields(null, bytes, from, length) : INVALID;
+		if (fields == INVALID) {
+			return fallbackEpochMillis(new String(bytes, from, length, StandardCharsets.ISO_8859_1), offset);
+		}
+		return epochMillis(fields, offset);
+	}
+
+	public String format(LocalDateTime dateTime) {
+		StringBuilder sb = new StringBuilder(length);
+		formatTo(dateTime, sb);
+		return sb.toString();
+	}
+
+	public void formatTo(LocalDateTime dateTime, StringBuilder sb) {
+		int year = dateTime.getYear();
+		if (!compiled || year < 1 || year > 9999) {
+			formatter.formatTo(dateTime, sb);
+			return;
+		}
+		for (int i = 0; i < kinds.length; i++) {
+			switch (kinds[i]) {
+			case LITERAL:
+				sb.append(literals[i]);
+				break;
+			case YEAR:
+				appendDigits(sb, year, 4);
+				break;
+			case MONTH:
+				appendDigits(sb, dateTime.getMonthValue(), 2);
+				break;
+			case MONTH_TEXT:
+				sb.append(monthNames[dateTime.getMonthValue()]);
+				break;
+			case DAY:
+				appendDigits(sb, dateTime.getDayOfMonth(), 2);
+				break;
+			case HOUR:
+				appendDigits(sb, dateTime.getHour(), 2);
+				break;
+			case MINUTE:
+				appendDigits(sb, dateTime.getMinute(), 2);
+				break;
+			case SECOND:
+				appendDigits(sb, dateTime.getSecond(), 2);
+				break;
+			case MILLI:
+				appendDigits(sb, dateTime.getNano() / 1000000, 3);
+				break;
+			}
+		}
+	}
+
+	private long fallbackEpochMillis(CharSequence text, ZoneOffset offset) {
+		TemporalAccessor parsed = formatter.parseBest(text, LocalDateTime::from, LocalDate::from);
+		LocalDateTime dateTime = parsed instanceof LocalDateTime ? (LocalDateTime) parsed
+				: ((LocalDate) parsed).atStartOfDay();
+		return dateTime.toInstant(offset).toEpochMilli();
+	}
+
+	// Returns the parsed fields packed into a long, or INVALID when the formatter has to decide.
+	// Either text or bytes is set.
+	private long parseFields(CharSequence text, byte[] bytes, int offset, int textLength) {
+		if (textLength != length) {
+			return INVALID;
+		}
+		int year = 0, month = 1, day = 1, hour = 0, minute = 0, second = 0, milli = 0;
+		for (int i = 0; i < kinds.length; i++) {
+			int kind = kinds[i];
+			int position = positions[i];
+			if (kind == LITERAL) {
+				if (charAt(text, bytes, offset, position) != literals[i]) {
+					return INVALID;
+				}
+				continue;
+			}
+			if (kind == MONTH_TEXT) {
+				month = monthOf(text, bytes, offset, position, widths[i]);
+				if (month < 0) {
+					return INVALID;
+				}
+				continue;
+			}
+			int value = 0;
+			for (int j = 0; j < widths[i]; j++) {
+				int digit = charAt(text, bytes, offset, position + j) - '0';
+				if (digit < 0 || digit > 9) {
+					return INVALID;
+				}
+				value = value * 10 + digit;
+			}
+			switch (kind) {
+			case YEAR:
+				year = value;
+				break;
+			case MONTH:
+				month = value;
+				break;
+			case DAY:
+				day = value;
+				break;
+			case HOUR:
+				hour = value;
+				break;
+			case MINUTE:
+				minute = value;
+				break;
+			case SECOND:
+				second = value;
+				break;
+			case MILLI:
+				milli = value;
+				break;
+			}
+		}
+		if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23
+				|| minute > 59 || second > 59) {
+			return INVALID;
+		}
+		return (long) year << 40 | (long) month << 36 | (long) day << 31 | (long) hour << 26 | (long) minute << 20
+				| (long) second << 14 | milli;
+	}
+
+	private int monthOf(CharSequence text, byte[] bytes, int offset, int position, int width) {
+		for (int m = 1; m <= 12; m++) {
+			String name = monthNames[m];
+			int j = 0;
+			while (j < width && charAt(text, bytes, offset, position + j) == name.charAt(j)) {
+				j++;
+			}
+			if (j == width) {
+				return m;
+			}
+		}
+		return -1;
+	}
+
+	private static char charAt(CharSequence text, byte[] bytes, int offset, int index) {
+		return text != null ? text.charAt(index) : (char) (bytes[offset + index] & 0xFF);
+	}
+
+	private static int year(long fields) {
+		return (int) (fields >>> 40);
+	}
+
+	private static int month(long fields) {
+		return (int) (fields >>> 36) & 0xF;
+	}
+
+	private static int day(long fields) {
+		return (int) (fields >>> 31) & 0x1F;
+	}
+
+	private static int hour(long fields) {
+		return (int) (fields >>> 26) & 0x1F;
+	}
+
+	private static int minute(long fields) {
+		return (int) (fields >>> 20) & 0x3F;
+	}
+
+	private static int second(long fields) {
+		return (int) (fields >>> 14) & 0x3F;
+	}
+
+	private static int milli(long fields) {
+		return (int) fields & 0x3FFF;
+	}
+
+	private static long epochMillis(long fields, ZoneOffset offset) {
+		long days = epochDay(year(fields), month(fields), day(fields));
+		long seconds = days * 86400 + hour(fields) * 3600 + minute(fields) * 60 + second(fields) - offset.getTotalSeconds();
+		return seconds * 1000 + milli(fields);
+	}
+
+	// Same computation as LocalDate.toEpochDay
+	private static long epochDay(long year, int month, int day) {
+		long total = 365 * year;
+		if (year >= 0) {
+			total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+		} else {
+			total -= year / -4 - year / -100 + year / -400;
+		}
+		total += (367 * month - 362) / 12;
+		total += day - 1;
+		if (month > 2) {
+			total--;
+			if (!isLeapYear(year)) {
+				total--;
+			}
+		}
+		return total - 719528;	// days from year 0 to 1970
+	}
+
+	private static boolean isLeapYear(long year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static void appendDigits(StringBuilder sb, int value, int width) {
+		for (int divisor = width == 4 ? 1000 : width == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+			sb.append((char) ('0' + value / divisor % 10));
+		}
+	}
+
+	private static boolean contains(List<int[]> elements, int kind) {
+		for (int[] e : elements) {
+			if (e[0] == kind) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Returns false when the pattern has an element without a fixed-width fast path.
+	private static boolean compile(String pattern, List<int[]> elements) {
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+					elements.add(new int[] { LITERAL, 0, 1, '\'' });	// '' outside quotes
+					i += 2;
+					continue;
+				}
+				// quoted text, where '' stands for one quote
+				int j = i + 1;
+				while (true) {
+					if (j >= pattern.length()) {
+						return false;
+					}
+					char q = pattern.charAt(j);
+					if (q == '\'') {
+						if (j + 1 < pattern.length() && pattern.charAt(j + 1) == '\'') {
+							elements.add(new int[] { LITERAL, 0, 1, '\'' });
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					elements.add(new int[] { LITERAL, 0, 1, q });
+					j++;
+				}
+				i = j + 1;
+				continue;
+			}
+			if (!Character.isLetter(c)) {
+				if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+					return false;	// optional sections and reserved characters
+				}
+				elements.add(new int[] { LITERAL, 0, 1, c });
+				i++;
+				continue;
+			}
+			int run = 1;
+			while (i + run < pattern.length() && pattern.charAt(i + run) == c) {
+				run++;
+			}
+			int kind;
+			if ((c == 'y' || c == 'u') && run == 4) {
+				kind = YEAR;
+			} else if (c == 'M' && run == 2) {
+				kind = MONTH;
+			} else if (c == 'M' && run == 3) {
+				kind = MONTH_TEXT;
+			} else if (c == 'd' && run == 2) {
+				kind = DAY;
+			} else if (c == 'H' && run == 2) {
+				kind = HOUR;
+			} else if (c == 'm' && run == 2) {
+				kind = MINUTE;
+			} else if (c == 's' && run == 2) {
+				kind = SECOND;
+			} else if (c == 'S' && run == 3) {
+				kind = MILLI;
+			} else {
+				return false;
+			}
+			if (contains(elements, kind)) {
+				return false;
+			}
+			elements.add(new int[] { kind, 0, kind == YEAR ? 4 : kind == MILLI ? 3 : 2, 0 });
+			i += run;
+		}
+		return true;
+	}
+}
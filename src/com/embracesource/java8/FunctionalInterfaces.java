@@ -46,7 +46,14 @@ public class FunctionalInterfaces {
 		Converter<Integer, String> converter3 = something::substring;
 		String o = converter3.convert(3);
 		System.out.println(o);
-		
+
+		//a converter that is called again and again with the same inputs can be memoized in a bounded cache
+		MemoizingCache<String, Integer> cache = MemoizingCache.memoize(converter2::convert, 10_000);
+		Converter<String, Integer> cachedConverter = cache::get;
+		cachedConverter.convert("456");
+		cachedConverter.convert("456");
+		System.out.println(cache.stats());	// Stats{hits=1, misses=1, evictions=0, hitRate=0.500}
+
 		Printer printer = string -> ("hello world");
 		String prints = printer.prints(null);
 		System.out.println(prints);
@@ -0,0 +1,446 @@
+package com.embracesource.java8;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+/**
+ * A concurrent hash map from int keys to objects, with the atomic putIfAbsent, compute and merge
+ * contract of {@link java.util.concurrent.ConcurrentHashMap}, without boxing the keys.
+ *
+ * The map is split into segments by the hash of the key. Every segment is an open addressing
+ * table with linear probing over an int[] of keys and an Object[] of values, so an entry costs
+ * two array slots instead of a node and an Integer; removal shifts the following entries back,
+ * so there are no tombstones. Writers lock their segment; readers don't lock at all unless a
+ * writer changed the segment while they were reading it.
+ *
+ * Null values are not allowed, as in ConcurrentHashMap. The functions passed to the compute
+ * methods and merge run with the segment write locked, and the lock is not reentrant, so they
+ * must be short and must not access this map at all, not even to read it. A function that calls
+ * back into the segment it runs in gets an IllegalStateException instead of waiting forever for
+ * a lock its own thread holds.
+ */
+public class IntObjectConcurrentMap<V> {
+	private static final int MIN_CAPACITY = 8;
+
+	private final Segment[] segments;
+	private final int segmentShift;
+
+	public IntObjectConcurrentMap() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public IntObjectConcurrentMap(int concurrencyLevel) {
+		int count = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, 1 << 16)) * 2 - 1);
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment();
+		}
+		segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+	}
+
+	/**
+	 * A functional interface for the compute methods, which take the key as a primitive int.
+	 */
+	@FunctionalInterface
+	public interface IntObjFunction<V, R> {
+		R apply(int key, V value);
+	}
+
+	@FunctionalInterface
+	public interface IntObjConsumer<V> {
+		void accept(int key, V value);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private Segment segmentFor(int hash) {
+		// the segments use the high bits of the hash and the tables the low bits
+		return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int hash = hash(key);
+		return (V) segmentFor(hash).get(key, hash);
+	}
+
+	public V getOrDefault(int key, V defaultValue) {
+		V value = get(key);
+		return value != null ? value : defaultValue;
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	// Returns the previous value, or null.
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		Objects.requireNonNull(value);
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			return (V) segment.put(key, hash, value, false);
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(int key, V value) {
+		Objects.requireNonNull(value);
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			return (V) segment.put(key, hash, value, true);
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	// Returns the removed value, or null.
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			if (slot < 0) {
+				return null;
+			}
+			Object old = segment.values[slot];
+			segment.delete(slot);
+			return (V) old;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	public boolean remove(int key, Object value) {
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			if (slot < 0 || !segment.values[slot].equals(value)) {
+				return false;
+			}
+			segment.delete(slot);
+			return true;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	// If the key has no value, stores the value computed from the key, unless it is null.
+	@SuppressWarnings("unchecked")
+	public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction) {
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		Object value = segment.get(key, hash);
+		if (value != null) {
+			return (V) value;
+		}
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			if (slot >= 0) {
+				return (V) segment.values[slot];
+			}
+			V computed = mappingFunction.apply(key);
+			if (computed != null) {
+				segment.put(key, hash, computed, false);
+			}
+			return computed;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	// If the key has a value, replaces it with the computed value, or removes it if that is null.
+	@SuppressWarnings("unchecked")
+	public V computeIfPresent(int key, IntObjFunction<? super V, ? extends V> remappingFunction) {
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			if (slot < 0) {
+				return null;
+			}
+			V computed = remappingFunction.apply(key, (V) segment.values[slot]);
+			if (computed == null) {
+				segment.delete(slot);
+			} else {
+				segment.values[slot] = computed;
+			}
+			return computed;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	// Computes the new value from the current value, or null if there is none; a null result removes the key.
+	@SuppressWarnings("unchecked")
+	public V compute(int key, IntObjFunction<? super V, ? extends V> remappingFunction) {
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			V computed = remappingFunction.apply(key, slot < 0 ? null : (V) segment.values[slot]);
+			if (slot >= 0) {
+				if (computed == null) {
+					segment.delete(slot);
+				} else {
+					segment.values[slot] = computed;
+				}
+			} else if (computed != null) {
+				segment.put(key, hash, computed, false);
+			}
+			return computed;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	// Stores the value if the key has none, or else the value merged with the current one; a null result removes the key.
+	@SuppressWarnings("unchecked")
+	public V merge(int key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(value);
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lockWrite();
+		try {
+			int slot = segment.find(key, hash);
+			if (slot < 0) {
+				segment.put(key, hash, value, false);
+				return value;
+			}
+			V merged = remappingFunction.apply((V) segment.values[slot], value);
+			if (merged == null) {
+				segment.delete(slot);
+			} else {
+				segment.values[slot] = merged;
+			}
+			return merged;
+		} finally {
+			segment.releaseWrite(stamp);
+		}
+	}
+
+	public int size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			long stamp = segment.lockRead();
+			try {
+				size += segment.size;
+			} finally {
+				segment.unlockRead(stamp);
+			}
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			long stamp = segment.lockWrite();
+			try {
+				segment.keys = new int[MIN_CAPACITY];
+				segment.values = new Object[MIN_CAPACITY];
+				segment.size = 0;
+			} finally {
+				segment.releaseWrite(stamp);
+			}
+		}
+	}
+
+	// Visits the entries one segment at a time; every segment is read locked while it is visited.
+	@SuppressWarnings("unchecked")
+	public void forEach(IntObjConsumer<? super V> action) {
+		for (Segment segment : segments) {
+			long stamp = segment.lockRead();
+			try {
+				int[] keys = segment.keys;
+				Object[] values = segment.values;
+				for (int i = 0; i < values.length; i++) {
+					if (values[i] != null) {
+						action.accept(keys[i], (V) values[i]);
+					}
+				}
+			} finally {
+				segment.unlockRead(stamp);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		forEach((key, value) -> {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(key).append('=').append(value);
+		});
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * A segment is its own lock. An empty slot has a null value.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Segment extends StampedLock {
+		int[] keys = new int[MIN_CAPACITY];
+		Object[] values = new Object[MIN_CAPACITY];
+		int size;
+		// The thread holding the write lock. Only that thread ever sees itself here, so the field
+		// needs no synchronization to tell a re-entry from the current thread.
+		private Thread writer;
+
+		long lockWrite() {
+			checkNotWriter();
+			long stamp = writeLock();
+			writer = Thread.currentThread();
+			return stamp;
+		}
+
+		void releaseWrite(long stamp) {
+			writer = null;
+			unlockWrite(stamp);
+		}
+
+		long lockRead() {
+			checkNotWriter();
+			return readLock();
+		}
+
+		private void checkNotWriter() {
+			if (writer == Thread.currentThread()) {
+				throw new IllegalStateException("Map accessed from a function running with its segment locked");
+			}
+		}
+
+		Object get(int key, int hash) {
+			long stamp = tryOptimisticRead();
+			if (stamp != 0) {
+				Object value = probe(keys, values, key, hash);
+				if (validate(stamp)) {
+					return value;
+				}
+			}
+			stamp = lockRead();
+			try {
+				return probe(keys, values, key, hash);
+			} finally {
+				unlockRead(stamp);
+			}
+		}
+
+		// Also called without the lock, when the arrays may be changing under it: it must not fail or loop.
+		private static Object probe(int[] keys, Object[] values, int key, int hash) {
+			int mask = Math.min(keys.length, values.length) - 1;
+			int slot = hash & mask;
+			for (int n = 0; n <= mask; n++) {
+				Object value = values[slot];
+				if (value == null) {
+					return null;
+				}
+				if (keys[slot] == key) {
+					return value;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		// The slot of the key, or -1; with the lock held.
+		int find(int key, int hash) {
+			int mask = keys.length - 1;
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				if (values[slot] == null) {
+					return -1;
+				}
+				if (keys[slot] == key) {
+					return slot;
+				}
+			}
+		}
+
+		// Returns the previous value; with the write lock held.
+		Object put(int key, int hash, Object value, boolean onlyIfAbsent) {
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			for (;; slot = (slot + 1) & mask) {
+				Object old = values[slot];
+				if (old == null) {
+					break;
+				}
+				if (keys[slot] == key) {
+					if (!onlyIfAbsent) {
+						values[slot] = value;
+					}
+					return old;
+				}
+			}
+			keys[slot] = key;
+			values[slot] = value;
+			if (++size > keys.length * 3 / 4) {
+				resize();
+			}
+			return null;
+		}
+
+		// Removes the entry at the slot, and shifts back the entries that probed past it.
+		void delete(int slot) {
+			int mask = keys.length - 1;
+			int hole = slot;
+			for (int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+				int home = hash(keys[i]) & mask;
+				// the entry can move to the hole unless its home slot lies in (hole, i]
+				boolean stays = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+				if (!stays) {
+					keys[hole] = keys[i];
+					values[hole] = values[i];
+					hole = i;
+				}
+			}
+			keys[hole] = 0;
+			values[hole] = null;
+			size--;
+		}
+
+		private void resize() {
+			int[] oldKeys = keys;
+			Object[] oldValues = values;
+			int capacity = oldKeys.length * 2;
+			int mask = capacity - 1;
+			int[] newKeys = new int[capacity];
+			Object[] newValues = new Object[capacity];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int slot = hash(oldKeys[i]) & mask;
+					while (newValues[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					newKeys[slot] = oldKeys[i];
+					newValues[slot] = oldValues[i];
+				}
+			}
+			keys = newKeys;
+			values = newValues;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package com.embracesource.java8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A stable sort of a list by int, long or Comparable keys, built like a comparator:
+ * {@code KeySort.comparingInt(Apple::getWeight).reversed().thenComparing(Apple::getColor).sort(inventory)}
+ * sorts like {@code inventory.sort(comparing(Apple::getWeight).reversed().thenComparing(Apple::getColor))}.
+ *
+ * Each key is extracted once per element instead of twice per comparison. The keys are shifted
+ * to start at 0, so that they take only as many bits as their range needs, and packed together
+ * with the element's position into one long, which {@link Arrays#parallelSort(long[])} sorts
+ * without any comparator; the position makes the sort stable. When the keys don't fit in one
+ * long with the position, they are sorted a long at a time, from the last key to the first. A
+ * Comparable key is replaced by the rank of its value among the distinct values, so it is cheap
+ * when there are few distinct values, like the colors of apples.
+ */
+public final class KeySort<T> {
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+	private final List<Key<T>> keys;	// most significant first
+
+	private KeySort(List<Key<T>> keys) {
+		this.keys = keys;
+	}
+
+	public static <T> KeySort<T> comparingInt(ToIntFunction<? super T> key) {
+		return new KeySort<T>(Collections.emptyList()).thenComparingInt(key);
+	}
+
+	public static <T> KeySort<T> comparingLong(ToLongFunction<? super T> key) {
+		return new KeySort<T>(Collections.emptyList()).thenComparingLong(key);
+	}
+
+	public static <T, U extends Comparable<? super U>> KeySort<T> comparing(Function<? super T, ? extends U> key) {
+		return new KeySort<T>(Collections.emptyList()).thenComparing(key);
+	}
+
+	public KeySort<T> thenComparingInt(ToIntFunction<? super T> key) {
+		return then(new Key<T>(false) {
+			@Override
+			long[] extract(T[] a) {
+				long[] values = new long[a.length];
+				setAll(values, i -> key.applyAsInt(a[i]));
+				return values;
+			}
+		});
+	}
+
+	public KeySort<T> thenComparingLong(ToLongFunction<? super T> key) {
+		return then(new Key<T>(false) {
+			@Override
+			long[] extract(T[] a) {
+				long[] values = new long[a.length];
+				setAll(values, i -> key.applyAsLong(a[i]));
+				return values;
+			}
+		});
+	}
+
+	public <U extends Comparable<? super U>> KeySort<T> thenComparing(Function<? super T, ? extends U> key) {
+		return then(new Key<T>(false) {
+			@Override
+			long[] extract(T[] a) {
+				Map<U, Integer> ranks = new HashMap<>();
+				List<U> distinct = new ArrayList<>();
+				int[] codes = new int[a.length];
+				for (int i = 0; i < a.length; i++) {
+					U value = key.apply(a[i]);
+					Integer code = ranks.get(value);
+					if (code == null) {
+						code = distinct.size();
+						ranks.put(value, code);
+						distinct.add(value);
+					}
+					codes[i] = code;
+				}
+				// rank[code] is the position of the code's value among the sorted distinct values
+				Integer[] byValue = new Integer[distinct.size()];
+				Arrays.setAll(byValue, c -> c);
+				Arrays.sort(byValue, (c1, c2) -> distinct.get(c1).compareTo(distinct.get(c2)));
+				int[] rank = new int[byValue.length];
+				for (int r = 0, value = 0; r < byValue.length; r++) {
+					if (r > 0 && distinct.get(byValue[r]).compareTo(distinct.get(byValue[r - 1])) != 0) {
+						value = r;
+					}
+					rank[byValue[r]] = value;
+				}
+				long[] values = new long[a.length];
+				setAll(values, i -> rank[codes[i]]);
+				return values;
+			}
+		});
+	}
+
+	// Reverses the order of all the keys so far, like Comparator.reversed(); equal elements keep their order.
+	public KeySort<T> reversed() {
+		List<Key<T>> reversed = new ArrayList<>();
+		for (Key<T> key : keys) {
+			reversed.add(key.reversed());
+		}
+		return new KeySort<>(reversed);
+	}
+
+	private KeySort<T> then(Key<T> key) {
+		List<Key<T>> keys = new ArrayList<>(this.keys);
+		keys.add(key);
+		return new KeySort<>(keys);
+	}
+
+	public void sort(List<T> list) {
+		@SuppressWarnings("unchecked")
+		T[] a = (T[]) list.toArray();
+		sort(a);
+		ListIterator<T> it = list.listIterator();
+		for (T e : a) {
+			it.next();
+			it.set(e);
+		}
+	}
+
+	public void sort(T[] a) {
+		int n = a.length;
+		if (n < 2) {
+			return;
+		}
+		// Every key as an unsigned number of width bits, with the last key in the lowest bits.
+		int k = keys.size();
+		long[][] values = new long[k][];
+		int[] offsets = new int[k];
+		int width = 0;
+		for (int i = k - 1; i >= 0; i--) {
+			Key<T> key = keys.get(i);
+			values[i] = key.extract(a);
+			offsets[i] = width;
+			width += normalize(values[i], key.descending);
+		}
+		int positionBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+		int digitBits = 64 - positionBits;
+		long positionMask = (1L << positionBits) - 1;
+		int[] order = new int[n];
+		Arrays.setAll(order, i -> i);
+		long[] packed = new long[n];
+		// Least significant digit first: each pass is stable, so the earlier passes break the ties of the later ones.
+		for (int lo = 0; lo < width; lo += digitBits) {
+			int digit = lo;
+			int[] current = order;
+			setAll(packed, i -> (digit(values, offsets, current[i], digit, digitBits) << positionBits | i) ^ Long.MIN_VALUE);
+			if (n < PARALLEL_THRESHOLD) {
+				Arrays.sort(packed);
+			} else {
+				Arrays.parallelSort(packed);
+			}
+			int[] next = new int[n];
+			for (int i = 0; i < n; i++) {
+				next[i] = current[(int) (packed[i] & positionMask)];
+			}
+			order = next;
+		}
+		T[] copy = a.clone();
+		for (int i = 0; i < n; i++) {
+			a[i] = copy[order[i]];
+		}
+	}
+
+	// Shifts the values to start at 0, in descending order if asked, and returns the number of bits they take.
+	private static int normalize(long[] values, boolean descending) {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (long v : values) {
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		long lowest = min;
+		long highest = max;
+		if (descending) {
+			setAll(values, i -> highest - values[i]);
+		} else {
+			setAll(values, i -> values[i] - lowest);
+		}
+		return 64 - Long.numberOfLeadingZeros(max - min);
+	}
+
+	// The bits [lo, lo + bits) of the concatenated keys of element e.
+	private static long digit(long[][] values, int[] offsets, int e, int lo, int bits) {
+		long digit = 0;
+		int hi = lo + bits;
+		for (int i = 0; i < values.length; i++) {
+			int keyLo = offsets[i];
+			int keyHi = i == 0 ? Integer.MAX_VALUE : offsets[i - 1];
+			if (keyHi <= lo || keyLo >= hi) {
+				continue;
+			}
+			long v = values[i][e];
+			int from = Math.max(keyLo, lo);
+			int to = Math.min(keyHi, hi);
+			if (from - keyLo < 64) {
+				v >>>= from - keyLo;
+				if (to - from < 64) {
+					v &= (1L << (to - from)) - 1;
+				}
+				digit |= v << (from - lo);
+			}
+		}
+		return digit;
+	}
+
+	private static void setAll(long[] a, IntToLongFunction f) {
+		if (a.length < PARALLEL_THRESHOLD) {
+			Arrays.setAll(a, f);
+		} else {
+			Arrays.parallelSetAll(a, f);
+		}
+	}
+
+	private abstract static class Key<T> {
+		final boolean descending;
+
+		Key(boolean descending) {
+			this.descending = descending;
+		}
+
+		// The key of every element, as signed longs in the key's order.
+		abstract long[] extract(T[] a);
+
+		Key<T> reversed() {
+			Key<T> key = this;
+			return new Key<T>(!descending) {
+				@Override
+				long[] extract(T[] a) {
+					return key.extract(a);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,458 @@
+package com.embracesource.java8;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Memoizes a function (or a Converter, as {@code converter::convert}) with a bounded cache, so that an expensive
+ * conversion that is called again and again with the same inputs is computed once, without the
+ * cache growing without bound.
+ *
+ * The cache is bounded by size, or by weight with a weigher, and uses the W-TinyLFU policy: new
+ * entries go to a small LRU window, and an entry leaving the window is only admitted to the main
+ * space (a segmented LRU with a probation and a protected part) if it has been used more often
+ * than the entry it would evict. How often keys are used is estimated by a count-min sketch of
+ * 4-bit counters that are halved from time to time, so old popularity fades.
+ *
+ * The values are kept in a ConcurrentHashMap, so that reads don't lock and every value is
+ * computed once. A read records its access in one of several small ring buffers, picked by
+ * thread, and the buffers are replayed into the policy under the lock when one of them is half
+ * full, or when a value is loaded. Recording costs one compare-and-set on the buffer of the
+ * thread; an access is dropped only when that buffer is full or another thread takes the same
+ * slot first, which spreads the cost of keeping the policy up to date over many hits.
+ */
+public class MemoizingCache<K, V> implements Function<K, V> {
+	private static final double WINDOW_PERCENT = 0.01;
+	private static final double PROTECTED_PERCENT = 0.80;
+
+	private final Function<? super K, ? extends V> loader;
+	private final ToIntBiFunction<? super K, ? super V> weigher;
+	private final ConcurrentMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+
+	// the policy, guarded by the lock
+	private final ReentrantLock lock = new ReentrantLock();
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final Deque<K, V> window = new Deque<>();
+	private final Deque<K, V> probation = new Deque<>();
+	private final Deque<K, V> protectedDeque = new Deque<>();
+	private final FrequencySketch sketch;
+	private final ReadBuffer<K, V>[] readBuffers;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public MemoizingCache(Function<? super K, ? extends V> loader, long maximumSize) {
+		this(loader, maximumSize, (key, value) -> 1);
+	}
+
+	public MemoizingCache(Function<? super K, ? extends V> loader, long maximumWeight,
+			ToIntBiFunction<? super K, ? super V> weigher) {
+		if (maximumWeight <= 0) {
+			throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+		}
+		this.loader = Objects.requireNonNull(loader);
+		this.weigher = Objects.requireNonNull(weigher);
+		this.maximumWeight = maximumWeight;
+		this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_PERCENT));
+		this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+		this.sketch = new FrequencySketch(maximumWeight);
+		this.readBuffers = newReadBuffers();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <K, V> ReadBuffer<K, V>[] newReadBuffers() {
+		int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+		ReadBuffer<K, V>[] buffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; i++) {
+			buffers[i] = new ReadBuffer<>();
+		}
+		return buffers;
+	}
+
+	public static <K, V> MemoizingCache<K, V> memoize(Function<? super K, ? extends V> function, long maximumSize) {
+		return new MemoizingCache<>(function, maximumSize);
+	}
+
+	@Override
+	public V apply(K key) {
+		return get(key);
+	}
+
+	// The cached value of the key, computed if it isn't cached; null if the function returns null, which isn't cached.
+	public V get(K key) {
+		Node<K, V> node = data.get(key);
+		if (node != null) {
+			hits.increment();
+			recordRead(node);
+			return node.value;
+		}
+		boolean[] loaded = new boolean[1];
+		Node<K, V> created = data.computeIfAbsent(key, k -> {
+			V value = loader.apply(k);
+			if (value == null) {
+				return null;
+			}
+			loaded[0] = true;
+			return new Node<>(k, value, weigher.applyAsInt(k, value));
+		});
+		if (created == null) {
+			misses.increment();
+			return null;
+		}
+		if (loaded[0]) {
+			misses.increment();
+		} else {
+			hits.increment();	// another thread loaded it first
+		}
+		lock.lock();
+		try {
+			drainReadBuffers();
+			if (!loaded[0]) {
+				onAccess(created);
+			} else if (!created.removed) {
+				onInsert(created);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return created.value;
+	}
+
+	public V getIfPresent(K key) {
+		Node<K, V> node = data.get(key);
+		return node == null ? null : node.value;
+	}
+
+	public void invalidate(K key) {
+		Node<K, V> node = data.remove(key);
+		if (node != null) {
+			lock.lock();
+			try {
+				unlink(node);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		for (K key : data.keySet()) {
+			invalidate(key);
+		}
+	}
+
+	public long size() {
+		return data.size();
+	}
+
+	public long weightedSize() {
+		lock.lock();
+		try {
+			return window.weight + probation.weight + protectedDeque.weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum());
+	}
+
+	private void recordRead(Node<K, V> node) {
+		ReadBuffer<K, V> buffer = readBuffers[spread((int) Thread.currentThread().getId()) & (readBuffers.length - 1)];
+		if (buffer.offer(node) && lock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void drainReadBuffers() {
+		for (ReadBuffer<K, V> buffer : readBuffers) {
+			buffer.drainTo(this);
+		}
+	}
+
+	private void onAccess(Node<K, V> node) {
+		if (node.queue == null || node.removed) {
+			return;	// not added to the policy yet, or already evicted
+		}
+		sketch.increment(node.hash);
+		if (node.queue == window) {
+			window.moveToBack(node);
+		} else if (node.queue == probation) {
+			probation.remove(node);
+			protectedDeque.add(node);
+			while (protectedDeque.weight > protectedMaximum && protectedDeque.first != node) {
+				Node<K, V> demoted = protectedDeque.first;
+				protectedDeque.remove(demoted);
+				probation.add(demoted);
+			}
+		} else {
+			protectedDeque.moveToBack(node);
+		}
+	}
+
+	private void onInsert(Node<K, V> node) {
+		sketch.increment(node.hash);
+		window.add(node);
+		while (window.weight > windowMaximum && window.first != null) {
+			Node<K, V> candidate = window.first;
+			window.remove(candidate);
+			admit(candidate);
+		}
+	}
+
+	// Moves the candidate from the window to the main space, if it is used more than what it would evict.
+	private void admit(Node<K, V> candidate) {
+		long mainMaximum = maximumWeight - windowMaximum;
+		if (candidate.weight > mainMaximum) {
+			evict(candidate);
+			return;
+		}
+		if (mainWeight() + candidate.weight > mainMaximum) {
+			Node<K, V> victim = probation.first != null ? probation.first : protectedDeque.first;
+			if (sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+				evict(candidate);
+				return;
+			}
+			while (mainWeight() + candidate.weight > mainMaximum) {
+				evict(probation.first != null ? probation.first : protectedDeque.first);
+			}
+		}
+		probation.add(candidate);
+	}
+
+	private long mainWeight() {
+		return probation.weight + protectedDeque.weight;
+	}
+
+	private void evict(Node<K, V> node) {
+		unlink(node);
+		if (data.remove(node.key, node)) {
+			evictions.increment();
+		}
+	}
+
+	private void unlink(Node<K, V> node) {
+		if (node.queue != null) {
+			node.queue.remove(node);
+		}
+		node.removed = true;
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final int weight;
+		final int hash;
+		// guarded by the policy lock
+		Deque<K, V> queue;
+		Node<K, V> prev;
+		Node<K, V> next;
+		boolean removed;
+
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.hash = spread(key.hashCode());
+		}
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A lossy ring buffer of the nodes read by the threads of one stripe. Any thread may offer,
+	 * only the thread holding the policy lock drains.
+	 */
+	private static final class ReadBuffer<K, V> {
+		private static final int SIZE = 16;
+		private static final int DRAIN_THRESHOLD = SIZE / 2;
+
+		private final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(SIZE);
+		private final AtomicLong writeCount = new AtomicLong();
+		private final AtomicLong readCount = new AtomicLong();
+
+		// Records the node, or drops it if the buffer is full or contended; returns true if the buffer should be drained.
+		boolean offer(Node<K, V> node) {
+			long head = readCount.get();
+			long tail = writeCount.get();
+			long size = tail - head;
+			if (size >= SIZE) {
+				return true;
+			}
+			if (writeCount.compareAndSet(tail, tail + 1)) {
+				slots.lazySet((int) tail & (SIZE - 1), node);
+				return size + 1 >= DRAIN_THRESHOLD;
+			}
+			return false;
+		}
+
+		// Replays the recorded reads, stopping at a slot that was claimed but isn't written yet.
+		void drainTo(MemoizingCache<K, V> cache) {
+			long head = readCount.get();
+			long tail = writeCount.get();
+			for (; head < tail; head++) {
+				int index = (int) head & (SIZE - 1);
+				Node<K, V> node = slots.get(index);
+				if (node == null) {
+					break;
+				}
+				slots.lazySet(index, null);
+				cache.onAccess(node);
+			}
+			readCount.lazySet(head);
+		}
+	}
+
+	/**
+	 * A doubly linked list in access order, least recently used first.
+	 */
+	private static final class Deque<K, V> {
+		Node<K, V> first;
+		Node<K, V> last;
+		long weight;
+
+		void add(Node<K, V> node) {
+			node.queue = this;
+			node.prev = last;
+			node.next = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+			weight += node.weight;
+		}
+
+		void remove(Node<K, V> node) {
+			if (node.prev == null) {
+				first = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				last = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			node.queue = null;
+			weight -= node.weight;
+		}
+
+		void moveToBack(Node<K, V> node) {
+			if (node != last) {
+				remove(node);
+				add(node);
+			}
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters, 16 to a long, with 4 counters per key. When the
+	 * counters have been incremented 10 times the table size, they are all halved.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		private static final long ONE_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int counterMask;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(long maximum) {
+			int length = Integer.highestOneBit((int) Math.min(Math.max(maximum, 16), 1 << 24) * 2 - 1);
+			table = new long[length];
+			counterMask = length * 16 - 1;
+			sampleSize = 10 * length;
+		}
+
+		private int counter(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return (int) h & counterMask;
+		}
+
+		int frequency(int hash) {
+			int frequency = 15;
+			for (int i = 0; i < 4; i++) {
+				int c = counter(hash, i);
+				frequency = Math.min(frequency, (int) (table[c >>> 4] >>> ((c & 15) << 2)) & 15);
+			}
+			return frequency;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int c = counter(hash, i);
+				int shift = (c & 15) << 2;
+				if (((table[c >>> 4] >>> shift) & 15) < 15) {
+					table[c >>> 4] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & ONE_MASK;
+				}
+				additions /= 2;
+			}
+		}
+	}
+
+	public static final class Stats {
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+
+		Stats(long hitCount, long missCount, long evictionCount) {
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.evictionCount = evictionCount;
+		}
+
+		public long hitCount() {
+			return hitCount;
+		}
+
+		public long missCount() {
+			return missCount;
+		}
+
+		public long evictionCount() {
+			return evictionCount;
+		}
+
+		public double hitRate() {
+			long requests = hitCount + missCount;
+			return requests == 0 ? 1.0 : (double) hitCount / requests;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats{hits=%d, misses=%d, evictions=%d, hitRate=%.3f}", hitCount, missCount,
+					evictionCount, hitRate());
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.embracesource.java8;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A parallel MSD (most significant digit first) radix sort for strings, in the natural
+ * order of {@link String#compareTo(String)}.
+ *
+ * The strings are distributed into buckets by the char at the current depth, and each
+ * bucket is sorted on the next char. Chars below 256 get a bucket of their own, which
+ * suits ASCII keys such as UUIDs, hex ids or fixed-width codes; strings with a larger char
+ * at some depth are left to a comparison sort within their bucket. The buckets of the first
+ * char are sorted in parallel. A prefix that all the strings of a bucket share, as paths or
+ * URLs often do, is skipped in one step rather than one char per level of recursion. Use
+ * {@link #sorted(Stream)} in place of {@code sorted()}.
+ */
+public class StringRadixSort {
+	private static final int RADIX = 256;
+	private static final int END = 0;				// bucket of the strings shorter than the depth
+	private static final int WIDE = RADIX + 1;		// bucket of the chars above 255
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+	private static final int MAX_LEVELS = 64;
+
+	public static void sort(String[] a) {
+		if (a.length > 1) {
+			new Sorter(a, new String[a.length]).sort(0, a.length, 0, 0);
+		}
+	}
+
+	public static void parallelSort(String[] a) {
+		if (a.length < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() == 1) {
+			sort(a);
+			return;
+		}
+		ForkJoinPool.commonPool().invoke(new SortTask(a, new String[a.length], 0, a.length, 0, 0));
+	}
+
+	// A drop-in replacement for stream.sorted(): sorts eagerly and streams the sorted array.
+	public static Stream<String> sorted(Stream<String> stream) {
+		boolean parallel = stream.isParallel();
+		String[] a = stream.toArray(String[]::new);
+		if (parallel) {
+			parallelSort(a);
+			return Arrays.stream(a).parallel();
+		}
+		sort(a);
+		return Arrays.stream(a);
+	}
+
+	public static Collector<String, ?, List<String>> toSortedList() {
+		return Collectors.collectingAndThen(Collectors.toList(), list -> {
+			String[] a = list.toArray(new String[list.size()]);
+			parallelSort(a);
+			return Arrays.asList(a);
+		});
+	}
+
+	private static int bucket(String s, int d) {
+		if (d >= s.length()) {
+			return END;
+		}
+		char c = s.charAt(d);
+		return c < RADIX ? c + 1 : WIDE;
+	}
+
+	// The depth of the first char the strings of a[lo, hi) don't all share, from d on.
+	private static int commonPrefix(String[] a, int lo, int hi, int d) {
+		String first = a[lo];
+		int end = first.length();
+		for (int i = lo + 1; i < hi && end > d; i++) {
+			String s = a[i];
+			int n = Math.min(end, s.length());
+			int k = d;
+			while (k < n && s.charAt(k) == first.charAt(k)) {
+				k++;
+			}
+			end = k;
+		}
+		return end;
+	}
+
+	// Distributes a[lo, hi) by the char at depth d; fills start with the bucket boundaries.
+	private static void distribute(String[] a, String[] aux, int lo, int hi, int d, int[] start, int[] next) {
+		Arrays.fill(start, 0);
+		for (int i = lo; i < hi; i++) {
+			start[bucket(a[i], d) + 1]++;
+		}
+		for (int r = 0; r < RADIX + 2; r++) {
+			start[r + 1] += start[r];
+		}
+		System.arraycopy(start, 0, next, 0, start.length);
+		for (int i = lo; i < hi; i++) {
+			aux[lo + next[bucket(a[i], d)]++] = a[i];
+		}
+		System.arraycopy(aux, lo, a, lo, hi - lo);
+	}
+
+	/**
+	 * One sequential sort. A level of the recursion skips the prefix its strings share before
+	 * it distributes them, so every level splits its range and long shared prefixes cost no
+	 * depth; past {@value #MAX_LEVELS} levels the range is left to {@link Arrays#sort}. The
+	 * bucket boundaries of each level are allocated once and reused.
+	 */
+	private static final class Sorter {
+		private final String[] a;
+		private final String[] aux;
+		private final int[][] starts = new int[MAX_LEVELS][];
+		private final int[] next = new int[RADIX + 3];
+
+		Sorter(String[] a, String[] aux) {
+			this.a = a;
+			this.aux = aux;
+		}
+
+		void sort(int lo, int hi, int d, int level) {
+			d = commonPrefix(a, lo, hi, d);
+			if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, lo, hi, d);
+				return;
+			}
+			if (level >= MAX_LEVELS) {
+				Arrays.sort(a, lo, hi);
+				return;
+			}
+			int[] start = starts[level];
+			if (start == null) {
+				start = starts[level] = new int[RADIX + 3];
+			}
+			distribute(a, aux, lo, hi, d, start, next);
+			for (int r = 1; r <= RADIX; r++) {
+				if (start[r + 1] - start[r] > 1) {
+					sort(lo + start[r], lo + start[r + 1], d + 1, level + 1);
+				}
+			}
+			// all strings in the wide bucket share their first d chars
+			Arrays.sort(a, lo + start[WIDE], lo + start[WIDE + 1]);
+		}
+	}
+
+	// The strings of a[lo, hi) share their first d chars.
+	private static void insertionSort(String[] a, int lo, int hi, int d) {
+		for (int i = lo + 1; i < hi; i++) {
+			String s = a[i];
+			int j = i;
+			while (j > lo && less(s, a[j - 1], d)) {
+				a[j] = a[j - 1];
+				j--;
+			}
+			a[j] = s;
+		}
+	}
+
+	private static boolean less(String s, String t, int d) {
+		int n = Math.min(s.length(), t.length());
+		for (int i = d; i < n; i++) {
+			char c1 = s.charAt(i);
+			char c2 = t.charAt(i);
+			if (c1 != c2) {
+				return c1 < c2;
+			}
+		}
+		return s.length() < t.length();
+	}
+
+	@SuppressWarnings("serial")
+	private static class SortTask extends RecursiveAction {
+		private final String[] a;
+		private final String[] aux;
+		private final int lo;
+		private final int hi;
+		private final int d;
+		private final int level;
+
+		SortTask(String[] a, String[] aux, int lo, int hi, int d, int level) {
+			this.a = a;
+			this.aux = aux;
+			this.lo = lo;
+			this.hi = hi;
+			this.d = d;
+			this.level = level;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo < PARALLEL_THRESHOLD || level >= MAX_LEVELS) {
+				new Sorter(a, aux).sort(lo, hi, d, level);
+				return;
+			}
+			int depth = commonPrefix(a, lo, hi, d);
+			int[] start = new int[RADIX + 3];
+			distribute(a, aux, lo, hi, depth, start, new int[RADIX + 3]);
+			// the buckets are disjoint ranges of a and aux, so they can be sorted concurrently
+			SortTask[] tasks = new SortTask[RADIX];
+			int n = 0;
+			for (int r = 1; r <= RADIX; r++) {
+				if (start[r + 1] - start[r] > 1) {
+					tasks[n++] = new SortTask(a, aux, lo + start[r], lo + start[r + 1], depth + 1, level + 1);
+				}
+			}
+			invokeAll(Arrays.asList(tasks).subList(0, n));
+			Arrays.sort(a, lo + start[WIDE], lo + start[WIDE + 1]);
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.embracesource.java8.Apple;
+import com.embracesource.java8.ColorDictionary;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization.ApplePredicate;
+
+/**
+ * A composable condition on apples that can be compiled into a single predicate.
+ *
+ * Composing lambdas with {@code and}/{@code or}/{@code negate} builds a tree of
+ * nested lambda objects, and the hot call site ends up dispatching to many
+ * different lambda classes. The tree of an AppleCondition is known, so instead
+ * {@link #compile()} folds it into disjunctive normal form (an OR of terms, each
+ * term a color constraint and a weight range) and returns one final class that
+ * evaluates the terms in a loop. Contradictory terms are dropped while folding.
+ *
+ * Lambdas themselves are opaque, so only conditions built from the factories
+ * below can be compiled.
+ *
+ * <pre>
+ * AppleCondition.colorIs("red").and(weightAbove(150)).or(colorIs("green")).compile();
+ * </pre>
+ */
+public final class AppleCondition {
+	private static final Term TRUE = new Term(null, Collections.<String>emptySet(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+	private final List<Term> terms;	// OR of terms, empty means false
+
+	private AppleCondition(List<Term> terms) {
+		this.terms = terms;
+	}
+
+	public static AppleCondition colorIs(String color) {
+		if (color == null) {
+			throw new NullPointerException("color");
+		}
+		return new AppleCondition(Collections.singletonList(new Term(color, Collections.<String>emptySet(),
+				Integer.MIN_VALUE, Integer.MAX_VALUE)));
+	}
+
+	// weight > min
+	public static AppleCondition weightAbove(int min) {
+		if (min == Integer.MAX_VALUE) {
+			return new AppleCondition(Collections.<Term>emptyList());
+		}
+		return weightBetween(min + 1, Integer.MAX_VALUE);
+	}
+
+	// weight < max
+	public static AppleCondition weightBelow(int max) {
+		if (max == Integer.MIN_VALUE) {
+			return new AppleCondition(Collections.<Term>emptyList());
+		}
+		return weightBetween(Integer.MIN_VALUE, max - 1);
+	}
+
+	// from <= weight <= to
+	public static AppleCondition weightBetween(int from, int to) {
+		if (from > to) {
+			return new AppleCondition(Collections.<Term>emptyList());
+		}
+		return new AppleCondition(Collections.singletonList(new Term(null, Collections.<String>emptySet(), from, to)));
+	}
+
+	public AppleCondition and(AppleCondition other) {
+		return new AppleCondition(and(terms, other.terms));
+	}
+
+	public AppleCondition or(AppleCondition other) {
+		List<Term> result = new ArrayList<>(terms);
+		for (Term t : other.terms) {
+			if (!result.contains(t)) {
+				result.add(t);
+			}
+		}
+		return new AppleCondition(result);
+	}
+
+	// not (t1 or t2 ...) == (not t1) and (not t2) ...
+	public AppleCondition negate() {
+		List<Term> result = Collections.singletonList(TRUE);
+		for (Term t : terms) {
+			result = and(result, t.negate());
+		}
+		return new AppleCondition(result);
+	}
+
+	public CompiledAppleCondition compile() {
+		for (Term t : terms) {
+			if (t.equals(TRUE)) {
+				return new CompiledAppleCondition(Collections.singletonList(TRUE));
+			}
+		}
+		return new CompiledAppleCondition(terms);
+	}
+
+	@Override
+	public String toString() {
+		return terms.toString();
+	}
+
+	private static List<Term> and(List<Term> left, List<Term> right) {
+		List<Term> result = new ArrayList<>();
+		for (Term l : left) {
+			for (Term r : right) {
+				Term t = l.and(r);
+				if (t != null && !result.contains(t)) {
+					result.add(t);
+				}
+			}
+		}
+		return result;
+	}
+
+	// color equals the given one (when not null), color is none of the excluded ones, lo <= weight <= hi
+	static final class Term {
+		final String color;
+		final Set<String> excluded;
+		final int lo;
+		final int hi;
+
+		Term(String color, Set<String> excluded, int lo, int hi) {
+			this.color = color;
+			this.excluded = excluded;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		// null when the conjunction can't be satisfied
+		Term and(Term other) {
+			int newLo = Math.max(lo, other.lo);
+			int newHi = Math.min(hi, other.hi);
+			if (newLo > newHi) {
+				return null;
+			}
+			String newColor = color;
+			if (other.color != null) {
+				if (newColor != null && !newColor.equals(other.color)) {
+					return null;
+				}
+				newColor = other.color;
+			}
+			Set<String> newExcluded;
+			if (newColor != null) {
+				if (excluded.contains(newColor) || other.excluded.contains(newColor)) {
+					return null;
+				}
+				newExcluded = Collections.emptySet();
+			} else {
+				newExcluded = new LinkedHashSet<>(excluded);
+				newExcluded.addAll(other.excluded);
+			}
+			return new Term(newColor, newExcluded, newLo, newHi);
+		}
+
+		// not (a and b and c) == (not a) or (not b) or (not c)
+		List<Term> negate() {
+			List<Term> result = new ArrayList<>();
+			if (color != null) {
+				result.add(new Term(null, Collections.singleton(color), Integer.MIN_VALUE, Integer.MAX_VALUE));
+			}
+			for (String s : excluded) {
+				result.add(new Term(s, Collections.<String>emptySet(), Integer.MIN_VALUE, Integer.MAX_VALUE));
+			}
+			if (lo != Integer.MIN_VALUE) {
+				result.add(new Term(null, Collections.<String>emptySet(), Integer.MIN_VALUE, lo - 1));
+			}
+			if (hi != Integer.MAX_VALUE) {
+				result.add(new Term(null, Collections.<String>emptySet(), hi + 1, Integer.MAX_VALUE));
+			}
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Term)) {
+				return false;
+			}
+			Term t = (Term) o;
+			return lo == t.lo && hi == t.hi && (color == null ? t.color == null : color.equals(t.color))
+					&& excluded.equals(t.excluded);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (color == null ? 0 : color.hashCode()) + excluded.hashCode()) + 31 * lo + hi;
+		}
+
+		@Override
+		public String toString() {
+			return "(color " + (color != null ? "= " + color : "not in " + excluded) + ", " + lo + " <= weight <= " + hi + ")";
+		}
+	}
+
+	/**
+	 * The compiled form: every condition compiles to this one final class, so call sites
+	 * that test compiled conditions stay monomorphic however the condition was composed.
+	 */
+	public static final class CompiledAppleCondition implements ApplePredicate, Predicate<Apple> {
+		private static final int ANY_COLOR = -1;
+
+		private final int size;
+		private final int[] colors;		// color codes (see ColorDictionary), ANY_COLOR when any color matches
+		private final int[][] excluded;
+		private final int[] lo;
+		private final int[] hi;
+
+		CompiledAppleCondition(List<Term> terms) {
+			size = terms.size();
+			colors = new int[size];
+			excluded = new int[size][];
+			lo = new int[size];
+			hi = new int[size];
+			for (int i = 0; i < size; i++) {
+				Term t = terms.get(i);
+				colors[i] = t.color == null ? ANY_COLOR : ColorDictionary.codeOf(t.color);
+				excluded[i] = new int[t.excluded.size()];
+				int j = 0;
+				for (String color : t.excluded) {
+					excluded[i][j++] = ColorDictionary.codeOf(color);
+				}
+				lo[i] = t.lo;
+				hi[i] = t.hi;
+			}
+		}
+
+		@Override
+		public boolean test(Apple apple) {
+			int weight = apple.getWeight();
+			int color = apple.getColorCode();
+			for (int i = 0; i < size; i++) {
+				if (weight < lo[i] || weight > hi[i]) {
+					continue;
+				}
+				if (colors[i] != ANY_COLOR) {
+					if (colors[i] == color) {
+						return true;
+					}
+					continue;
+				}
+				if (excluded[i].length == 0 || !contains(excluded[i], color)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean contains(int[] colors, int color) {
+			for (int c : colors) {
+				if (c == color) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					sb.append(" or ");
+				}
+				sb.append("(color ").append(colors[i] != ANY_COLOR ? "= " + ColorDictionary.colorOf(colors[i]) : "not in " + colorsOf(excluded[i]))
+						.append(", ").append(lo[i]).append(" <= weight <= ").append(hi[i]).append(')');
+			}
+			return size == 0 ? "false" : sb.toString();
+		}
+
+		private static List<String> colorsOf(int[] codes) {
+			List<String> colors = new ArrayList<>(codes.length);
+			for (int code : codes) {
+				colors.add(ColorDictionary.colorOf(code));
+			}
+			return colors;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.embracesource.java8.Apple;
+
+/**
+ * A secondary index over an apple inventory, hashed by color and range-bucketed by weight,
+ * that answers the filterApplesByColor / filterApplesByWeight queries in O(matches)
+ * instead of scanning the whole inventory.
+ *
+ * Reads don't lock the buckets, which are concurrent sets. Updates must go through
+ * {@link #setColor(Apple, String)} and {@link #setWeight(Apple, int)} and are serialized
+ * per apple by a striped lock. An update first adds the apple to its new bucket, then
+ * changes the field, then removes it from the old bucket, and every read checks the
+ * current value of the apple it finds under that same lock, since the fields of Apple are
+ * not volatile. So a query never returns an apple that doesn't match and never misses one
+ * that matched for its whole duration.
+ *
+ * A bucket is dropped when its last apple leaves it. Adding to and dropping a bucket are
+ * serialized by a second striped lock, by bucket, so an apple is never added to a bucket
+ * that is being dropped.
+ *
+ * Unlike the list scans, lookups return the matching apples in no particular order.
+ */
+public class AppleIndex {
+	private static final int STRIPES = 64;
+	private static final String NO_COLOR = "<none>";	// bucket of apples without color, reads re-check the color anyway
+
+	private final int bucketWidth;
+	private final Map<String, Set<Apple>> byColor = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Integer, Set<Apple>> byWeight = new ConcurrentSkipListMap<>();
+	private final Object[] locks = new Object[STRIPES];
+	private final Object[] bucketLocks = new Object[STRIPES];	// taken with or after an apple lock, never before
+
+	public AppleIndex() {
+		this(10);
+	}
+
+	public AppleIndex(int bucketWidth) {
+		if (bucketWidth <= 0) {
+			throw new IllegalArgumentException("bucketWidth must be positive: " + bucketWidth);
+		}
+		this.bucketWidth = bucketWidth;
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+			bucketLocks[i] = new Object();
+		}
+	}
+
+	public static AppleIndex of(Collection<Apple> inventory) {
+		AppleIndex index = new AppleIndex();
+		for (Apple apple : inventory) {
+			index.add(apple);
+		}
+		return index;
+	}
+
+	public void add(Apple apple) {
+		synchronized (lockFor(apple)) {
+			addTo(byColor, colorKey(apple.getColor()), apple);
+			addTo(byWeight, bucketOf(apple.getWeight()), apple);
+		}
+	}
+
+	public void remove(Apple apple) {
+		synchronized (lockFor(apple)) {
+			removeFrom(byColor, colorKey(apple.getColor()), apple);
+			removeFrom(byWeight, bucketOf(apple.getWeight()), apple);
+		}
+	}
+
+	public void setColor(Apple apple, String color) {
+		synchronized (lockFor(apple)) {
+			String from = colorKey(apple.getColor());
+			String to = colorKey(color);
+			addTo(byColor, to, apple);
+			apple.setColor(color);
+			if (!from.equals(to)) {
+				removeFrom(byColor, from, apple);
+			}
+		}
+	}
+
+	public void setWeight(Apple apple, int weight) {
+		synchronized (lockFor(apple)) {
+			int from = bucketOf(apple.getWeight());
+			int to = bucketOf(weight);
+			addTo(byWeight, to, apple);
+			apple.setWeight(weight);
+			if (from != to) {
+				removeFrom(byWeight, from, apple);
+			}
+		}
+	}
+
+	// Point lookup, the indexed version of filterApplesByColor.
+	public List<Apple> filterApplesByColor(String color) {
+		List<Apple> result = new ArrayList<Apple>();
+		Set<Apple> bucket = byColor.get(colorKey(color));
+		if (bucket != null) {
+			for (Apple apple : bucket) {
+				String current;
+				synchronized (lockFor(apple)) {
+					current = apple.getColor();
+				}
+				if (color == null ? current == null : color.equals(current)) {
+					result.add(apple);
+				}
+			}
+		}
+		return result;
+	}
+
+	// Range lookup, the indexed version of filterApplesByWeight: weight > the given one.
+	public List<Apple> filterApplesByWeight(int weight) {
+		if (weight == Integer.MAX_VALUE) {
+			return new ArrayList<Apple>();
+		}
+		return filterApplesByWeight(weight + 1, Integer.MAX_VALUE);
+	}
+
+	// from <= weight <= to
+	public List<Apple> filterApplesByWeight(int from, int to) {
+		List<Apple> result = new ArrayList<Apple>();
+		if (from > to) {
+			return result;
+		}
+		for (Set<Apple> bucket : byWeight.subMap(bucketOf(from), true, bucketOf(to), true).values()) {
+			for (Apple apple : bucket) {
+				int current;
+				synchronized (lockFor(apple)) {
+					current = apple.getWeight();
+				}
+				if (current >= from && current <= to) {
+					result.add(apple);
+				}
+			}
+		}
+		return result;
+	}
+
+	private <K> void addTo(Map<K, Set<Apple>> buckets, K key, Apple apple) {
+		synchronized (bucketLockFor(key)) {
+			buckets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(apple);
+		}
+	}
+
+	private <K> void removeFrom(Map<K, Set<Apple>> buckets, K key, Apple apple) {
+		synchronized (bucketLockFor(key)) {
+			Set<Apple> bucket = buckets.get(key);
+			if (bucket != null && bucket.remove(apple) && bucket.isEmpty()) {
+				buckets.remove(key);
+			}
+		}
+	}
+
+	private static String colorKey(String color) {
+		return color == null ? NO_COLOR : color;
+	}
+
+	private int bucketOf(int weight) {
+		return Math.floorDiv(weight, bucketWidth);
+	}
+
+	private Object lockFor(Apple apple) {
+		return locks[System.identityHashCode(apple) & (STRIPES - 1)];
+	}
+
+	private Object bucketLockFor(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return bucketLocks[(h ^ (h >>> 16)) & (STRIPES - 1)];
+	}
+}
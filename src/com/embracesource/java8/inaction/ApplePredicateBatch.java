@@ -0,0 +1,118 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.embracesource.java8.Apple;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization.ApplePredicate;
+
+/**
+ * Evaluates many ApplePredicates against an inventory in one pass, instead of one
+ * filterApples pass per predicate.
+ *
+ * Every apple is read once and tested against all the registered predicates, and the result of
+ * each predicate is a bitmap with one bit per apple, set when the apple matches. The inventory is
+ * cut into chunks of {@value #CHUNK} apples that are evaluated in parallel; a chunk is a whole
+ * number of 64 bit words in every bitmap, so the threads never write to the same word.
+ */
+public class ApplePredicateBatch {
+	static final int CHUNK = 1 << 12;
+
+	private final List<ApplePredicate> predicates = new ArrayList<>();
+
+	// Registers a predicate and returns its id, the index of its bitmap in the results.
+	public synchronized int register(ApplePredicate p) {
+		predicates.add(p);
+		return predicates.size() - 1;
+	}
+
+	public synchronized int size() {
+		return predicates.size();
+	}
+
+	public Result evaluate(List<Apple> inventory) {
+		ApplePredicate[] ps;
+		synchronized (this) {
+			ps = predicates.toArray(new ApplePredicate[predicates.size()]);
+		}
+		Apple[] apples = inventory.toArray(new Apple[inventory.size()]);
+		int words = (apples.length + 63) >>> 6;
+		long[][] bitmaps = new long[ps.length][words];
+		int chunks = (apples.length + CHUNK - 1) / CHUNK;
+		IntStream.range(0, chunks).parallel().forEach(chunk -> {
+			long[] current = new long[ps.length];	// the word being filled, per predicate
+			int end = Math.min(apples.length, (chunk + 1) * CHUNK);
+			for (int word = chunk * (CHUNK >>> 6); word << 6 < end; word++) {
+				int from = word << 6;
+				int to = Math.min(end, from + 64);
+				for (int i = from; i < to; i++) {
+					Apple apple = apples[i];
+					long bit = 1L << i;
+					for (int p = 0; p < ps.length; p++) {
+						if (ps[p].test(apple)) {
+							current[p] |= bit;
+						}
+					}
+				}
+				for (int p = 0; p < ps.length; p++) {
+					bitmaps[p][word] = current[p];
+					current[p] = 0;
+				}
+			}
+		});
+		return new Result(apples, bitmaps);
+	}
+
+	/**
+	 * The bitmaps of one evaluation, by predicate id; apple i matched predicate p if bit
+	 * {@code i % 64} of {@code getBitmap(p)[i / 64]} is set.
+	 */
+	public static final class Result {
+		private final Apple[] apples;
+		private final long[][] bitmaps;
+
+		private Result(Apple[] apples, long[][] bitmaps) {
+			this.apples = apples;
+			this.bitmaps = bitmaps;
+		}
+
+		// The number of apples evaluated.
+		public int size() {
+			return apples.length;
+		}
+
+		public long[] getBitmap(int id) {
+			return bitmaps[id];
+		}
+
+		public boolean matches(int id, int index) {
+			return (bitmaps[id][index >>> 6] & (1L << index)) != 0;
+		}
+
+		// The bitmap of the predicate as a compressed RowBitmap, to combine with other results.
+		public RowBitmap getRows(int id) {
+			return RowBitmap.fromWords(bitmaps[id]);
+		}
+
+		public int count(int id) {
+			int count = 0;
+			for (long word : bitmaps[id]) {
+				count += Long.bitCount(word);
+			}
+			return count;
+		}
+
+		// The apples that matched the predicate, in inventory order, like filterApples would return them.
+		public List<Apple> filterApples(int id) {
+			long[] bitmap = bitmaps[id];
+			List<Apple> result = new ArrayList<>(count(id));
+			for (int word = 0; word < bitmap.length; word++) {
+				for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+					result.add(apples[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+				}
+			}
+			return result;
+		}
+	}
+}
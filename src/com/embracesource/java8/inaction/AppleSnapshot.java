@@ -0,0 +1,210 @@
+package com.embracesource.java8.inaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.embracesource.java8.Apple;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization.ApplePredicate;
+
+/**
+ * A binary snapshot of an apple inventory that can be loaded without parsing or creating an Apple
+ * per row.
+ *
+ * Little endian, each section aligned to 8 bytes:
+ *
+ * <pre>
+ * header   magic "APS1", version, row count, color count, color char count, 12 reserved bytes
+ * weights  int[rows]
+ * colors   char[rows], the color code of each apple, 0 for no color
+ * offsets  int[colors + 1], the name of color code c is names[offsets[c - 1], offsets[c])
+ * names    char[color chars]
+ * </pre>
+ *
+ * Unlike an {@link AppleStore}, a snapshot is written once and then only read: the rows are read
+ * straight from the buffer it was opened on, usually a read-only mapping of the file, and only
+ * the few color names are decoded when it is opened.
+ */
+public class AppleSnapshot {
+	private static final int MAGIC = 0x41505331;	// "APS1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int MAX_COLORS = Character.MAX_VALUE;	// code 0 means "no color"
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final String[] colors;	// by code, colors[0] is null
+	private final int weightsOffset;
+	private final int colorCodesOffset;
+
+	private AppleSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an apple snapshot");
+		}
+		if (this.buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported apple snapshot version " + this.buffer.getInt(4));
+		}
+		size = this.buffer.getInt(8);
+		int colorCount = this.buffer.getInt(12);
+		long[] layout = layout(size, colorCount, this.buffer.getInt(16));
+		if (layout[4] > this.buffer.capacity()) {
+			throw new IOException("Truncated apple snapshot");
+		}
+		weightsOffset = (int) layout[0];
+		colorCodesOffset = (int) layout[1];
+		colors = new String[colorCount + 1];
+		for (int code = 1; code <= colorCount; code++) {
+			int start = this.buffer.getInt((int) layout[2] + 4 * (code - 1));
+			int end = this.buffer.getInt((int) layout[2] + 4 * code);
+			char[] name = new char[end - start];
+			for (int i = 0; i < name.length; i++) {
+				name[i] = this.buffer.getChar((int) layout[3] + 2 * (start + i));
+			}
+			colors[code] = new String(name);
+		}
+	}
+
+	// The offsets of the sections, and the total size.
+	private static long[] layout(int size, int colorCount, int colorChars) {
+		long weights = HEADER_SIZE;
+		long colorCodes = align(weights + 4L * size);
+		long nameOffsets = align(colorCodes + 2L * size);
+		long names = align(nameOffsets + 4L * (colorCount + 1));
+		long end = names + 2L * colorChars;
+		return new long[] { weights, colorCodes, nameOffsets, names, end };
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	public static AppleSnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new AppleSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static AppleSnapshot read(ByteBuffer buffer) throws IOException {
+		return new AppleSnapshot(buffer);
+	}
+
+	public static void write(Path file, List<Apple> inventory) throws IOException {
+		int size = inventory.size();
+		char[] codes = new char[size];
+		List<String> colors = new ArrayList<>();
+		Map<String, Integer> colorCodes = new HashMap<>();
+		int colorChars = 0;
+		int row = 0;
+		for (Apple apple : inventory) {
+			String color = apple.getColor();
+			if (color != null) {
+				Integer code = colorCodes.get(color);
+				if (code == null) {
+					if (colors.size() == MAX_COLORS) {
+						throw new IllegalArgumentException("Too many colors, at most " + MAX_COLORS);
+					}
+					colors.add(color);
+					colorChars += color.length();
+					code = colors.size();
+					colorCodes.put(color, code);
+				}
+				codes[row] = (char) code.intValue();
+			}
+			row++;
+		}
+		long[] layout = layout(size, colors.size(), colorChars);
+		if (layout[4] > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Inventory too large for one snapshot: " + size + " apples");
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout[4]);
+			ByteBuffer out = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(0, MAGIC);
+			out.putInt(4, VERSION);
+			out.putInt(8, size);
+			out.putInt(12, colors.size());
+			out.putInt(16, colorChars);
+			row = 0;
+			for (Apple apple : inventory) {
+				out.putInt((int) layout[0] + 4 * row, apple.getWeight());
+				out.putChar((int) layout[1] + 2 * row, codes[row]);
+				row++;
+			}
+			int nameOffset = 0;
+			for (int c = 0; c < colors.size(); c++) {
+				out.putInt((int) layout[2] + 4 * c, nameOffset);
+				String color = colors.get(c);
+				for (int i = 0; i < color.length(); i++) {
+					out.putChar((int) layout[3] + 2 * (nameOffset + i), color.charAt(i));
+				}
+				nameOffset += color.length();
+			}
+			out.putInt((int) layout[2] + 4 * colors.size(), nameOffset);
+			mapped.force();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getWeight(int row) {
+		checkRow(row);
+		return buffer.getInt(weightsOffset + 4 * row);
+	}
+
+	public String getColor(int row) {
+		checkRow(row);
+		return colors[buffer.getChar(colorCodesOffset + 2 * row)];
+	}
+
+	public Apple toApple(int row) {
+		return new Apple(getColor(row), getWeight(row));
+	}
+
+	// A read-only list that creates the apples as they are read.
+	public List<Apple> asList() {
+		return new AbstractList<Apple>() {
+			@Override
+			public Apple get(int index) {
+				return toApple(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	// Tests every row against the predicate through one reused Apple, and creates only the apples that match.
+	public List<Apple> filterApples(ApplePredicate p) {
+		List<Apple> result = new ArrayList<>();
+		Apple current = new Apple();
+		for (int row = 0; row < size; row++) {
+			current.setWeight(buffer.getInt(weightsOffset + 4 * row));
+			current.setColor(colors[buffer.getChar(colorCodesOffset + 2 * row)]);
+			if (p.test(current)) {
+				result.add(new Apple(current.getColor(), current.getWeight()));
+			}
+		}
+		return result;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+		}
+	}
+}
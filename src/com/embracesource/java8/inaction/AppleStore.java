@@ -0,0 +1,309 @@
+package com.embracesource.java8.inaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+import com.embracesource.java8.Apple;
+import com.embracesource.java8.inaction.PassingCodeWithBehaviorParameterization.ApplePredicate;
+
+/**
+ * An apple inventory kept outside of the heap, in a memory-mapped file.
+ *
+ * Every apple is a fixed-width record (int weight, byte color code) and the few
+ * distinct colors live in a small table in the file header, so scanning an
+ * inventory bigger than the heap allocates nothing. A {@link Cursor} walks the
+ * records and exposes the current one as a reused {@link Apple}, which lets the
+ * existing {@link ApplePredicate}s run against the store unchanged.
+ */
+public class AppleStore implements Closeable {
+	private static final int MAGIC = 0x4150504C;	// "APPL"
+	private static final int VERSION = 1;
+
+	// header: magic, version, size (long), color count, then the color table
+	private static final int SIZE_OFFSET = 8;
+	private static final int COLOR_COUNT_OFFSET = 16;
+	private static final int COLOR_TABLE_OFFSET = 20;
+	private static final int COLOR_SLOT = 32;		// length byte + up to 31 bytes of UTF-8
+	private static final int MAX_COLORS = 255;		// code 0 means "no color"
+	private static final int HEADER_SIZE = 8192;
+
+	// record: weight (int), color code (byte), padding
+	private static final int RECORD_SIZE = 8;
+	private static final int SEGMENT_SHIFT = 24;	// 16M records, 128MB per mapping
+	private static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_RECORDS - 1;
+	private static final int MIN_SEGMENT_RECORDS = 1 << 12;	// 32KB, the first mapping of a segment
+
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	private int lastSegmentRecords;	// the records the last mapping holds
+	private final String[] colors = new String[MAX_COLORS + 1];
+	private final Map<String, Integer> colorCodes = new HashMap<>();
+	private int colorCount;
+	private long size;
+
+	private AppleStore(FileChannel channel, boolean create) throws IOException {
+		this.channel = channel;
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		if (create) {
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putLong(SIZE_OFFSET, 0);
+			header.putInt(COLOR_COUNT_OFFSET, 0);
+			return;
+		}
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			throw new IOException("Not an apple store or unsupported version");
+		}
+		size = header.getLong(SIZE_OFFSET);
+		colorCount = header.getInt(COLOR_COUNT_OFFSET);
+		for (int code = 1; code <= colorCount; code++) {
+			int slot = COLOR_TABLE_OFFSET + (code - 1) * COLOR_SLOT;
+			byte[] bytes = new byte[header.get(slot)];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = header.get(slot + 1 + i);
+			}
+			colors[code] = new String(bytes, StandardCharsets.UTF_8);
+			colorCodes.put(colors[code], code);
+		}
+		if (size > 0) {
+			ensureSegment(size - 1);
+		}
+	}
+
+	public static AppleStore create(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new AppleStore(channel, true);
+	}
+
+	public static AppleStore open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new AppleStore(channel, false);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public long add(Apple apple) throws IOException {
+		return add(apple.getColor(), apple.getWeight());
+	}
+
+	public long add(String color, int weight) throws IOException {
+		long row = size;
+		ensureSegment(row);
+		MappedByteBuffer segment = segments[(int) (row >>> SEGMENT_SHIFT)];
+		int offset = ((int) row & SEGMENT_MASK) * RECORD_SIZE;
+		segment.putInt(offset, weight);
+		segment.put(offset + 4, (byte) encode(color));
+		size = row + 1;
+		header.putLong(SIZE_OFFSET, size);
+		return row;
+	}
+
+	public int getWeight(long row) {
+		checkRow(row);
+		return segments[(int) (row >>> SEGMENT_SHIFT)].getInt(((int) row & SEGMENT_MASK) * RECORD_SIZE);
+	}
+
+	public void setWeight(long row, int weight) {
+		checkRow(row);
+		segments[(int) (row >>> SEGMENT_SHIFT)].putInt(((int) row & SEGMENT_MASK) * RECORD_SIZE, weight);
+	}
+
+	public int getColorCode(long row) {
+		checkRow(row);
+		return segments[(int) (row >>> SEGMENT_SHIFT)].get(((int) row & SEGMENT_MASK) * RECORD_SIZE + 4) & 0xFF;
+	}
+
+	public String getColor(long row) {
+		return colors[getColorCode(row)];
+	}
+
+	public void setColor(long row, String color) {
+		checkRow(row);
+		segments[(int) (row >>> SEGMENT_SHIFT)].put(((int) row & SEGMENT_MASK) * RECORD_SIZE + 4, (byte) encode(color));
+	}
+
+	/**
+	 * Returns the code of a color, or -1 when no apple in this store has that color.
+	 */
+	public int colorCode(String color) {
+		if (color == null) {
+			return 0;
+		}
+		Integer code = colorCodes.get(color);
+		return code == null ? -1 : code;
+	}
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	// The filterApples(List<Apple>, ApplePredicate) query, without materialising the inventory.
+	public long count(ApplePredicate p) {
+		long count = 0;
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			if (p.test(cursor.apple())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void forEachMatch(ApplePredicate p, LongConsumer rows) {
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			if (p.test(cursor.apple())) {
+				rows.accept(cursor.row());
+			}
+		}
+	}
+
+	// Only the matching apples are copied onto the heap.
+	public List<Apple> filterApples(ApplePredicate p) {
+		List<Apple> result = new ArrayList<Apple>();
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			if (p.test(cursor.apple())) {
+				result.add(new Apple(cursor.color(), cursor.weight()));
+			}
+		}
+		return result;
+	}
+
+	public void flush() {
+		header.force();
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+
+	// The mappings themselves are released when they are garbage collected.
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	private int encode(String color) {
+		if (color == null) {
+			return 0;
+		}
+		Integer code = colorCodes.get(color);
+		if (code != null) {
+			return code;
+		}
+		byte[] bytes = color.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length >= COLOR_SLOT) {
+			throw new IllegalArgumentException("Color name too long: " + color);
+		}
+		if (colorCount == MAX_COLORS) {
+			throw new IllegalStateException("Too many distinct colors, at most " + MAX_COLORS);
+		}
+		int newCode = ++colorCount;
+		int slot = COLOR_TABLE_OFFSET + (newCode - 1) * COLOR_SLOT;
+		header.put(slot, (byte) bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			header.put(slot + 1 + i, bytes[i]);
+		}
+		header.putInt(COLOR_COUNT_OFFSET, colorCount);
+		colors[newCode] = color;
+		colorCodes.put(color, newCode);
+		return newCode;
+	}
+
+	// Full segments are mapped whole; the last one is mapped just past the row and remapped
+	// twice as large when a row falls outside of it, so the file grows with the records.
+	private void ensureSegment(long row) throws IOException {
+		int index = (int) (row >>> SEGMENT_SHIFT);
+		int records = ((int) row & SEGMENT_MASK) + 1;
+		if (index < segments.length - 1 || index == segments.length - 1 && records <= lastSegmentRecords) {
+			return;
+		}
+		MappedByteBuffer[] grown = Arrays.copyOf(segments, Math.max(segments.length, index + 1));
+		for (int i = Math.max(0, segments.length - 1); i < index; i++) {
+			if (grown[i] == null || grown[i].capacity() < SEGMENT_RECORDS * RECORD_SIZE) {
+				grown[i] = map(i, SEGMENT_RECORDS);
+			}
+		}
+		int capacity = index == segments.length - 1 ? lastSegmentRecords : MIN_SEGMENT_RECORDS;
+		while (capacity < records) {
+			capacity <<= 1;
+		}
+		grown[index] = map(index, Math.min(capacity, SEGMENT_RECORDS));
+		lastSegmentRecords = grown[index].capacity() / RECORD_SIZE;
+		segments = grown;
+	}
+
+	private MappedByteBuffer map(int segment, int records) throws IOException {
+		long position = HEADER_SIZE + ((long) segment << SEGMENT_SHIFT) * RECORD_SIZE;
+		return channel.map(FileChannel.MapMode.READ_WRITE, position, (long) records * RECORD_SIZE);
+	}
+
+	private void checkRow(long row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+		}
+	}
+
+	/**
+	 * A forward-only view over the records. The values of the current record are
+	 * read straight from the mapping; {@link #apple()} always returns the same
+	 * instance, so predicates must not keep a reference to it.
+	 */
+	public class Cursor {
+		private final Apple current = new Apple();
+		private long row = -1;
+		private MappedByteBuffer segment;
+		private int offset;
+
+		public boolean next() {
+			if (row + 1 >= size) {
+				return false;
+			}
+			row++;
+			offset = ((int) row & SEGMENT_MASK) * RECORD_SIZE;
+			if (offset == 0 || segment == null || offset >= segment.capacity()) {	// the last segment may have been remapped
+				segment = segments[(int) (row >>> SEGMENT_SHIFT)];
+			}
+			return true;
+		}
+
+		public long row() {
+			return row;
+		}
+
+		public int weight() {
+			return segment.getInt(offset);
+		}
+
+		public int colorCode() {
+			return segment.get(offset + 4) & 0xFF;
+		}
+
+		public String color() {
+			return colors[colorCode()];
+		}
+
+		public Apple apple() {
+			current.setColor(color());
+			current.setWeight(weight());
+			return current;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.embracesource.java8.inaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+
+import com.embracesource.java8.inaction.IntroducingStreams.Dish;
+
+/**
+ * A binary snapshot of a menu that can be loaded without parsing or creating a Dish per row.
+ *
+ * The file holds the columns of a {@link DishTable}, little endian, each section aligned to
+ * 8 bytes:
+ *
+ * <pre>
+ * header   magic "DSH1", version, row count, name char count, type count, 12 reserved bytes
+ * calories int[rows]
+ * vegan    long[(rows + 63) / 64], one bit per row
+ * types    byte[rows], the Dish.Type ordinal
+ * offsets  int[rows + 1], name i is names[offsets[i], offsets[i + 1])
+ * names    char[name chars], UTF-16 so that they load with one bulk copy
+ * </pre>
+ *
+ * A DishSnapshot reads the rows straight from the buffer it was opened on, usually a read-only
+ * mapping of the file, so opening one costs nothing per row; {@link #toDishTable()} copies the
+ * columns into arrays in bulk.
+ */
+public class DishSnapshot {
+	private static final int MAGIC = 0x44534831;	// "DSH1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final Dish.Type[] TYPES = Dish.Type.values();
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int nameChars;
+	private final int caloriesOffset;
+	private final int vegetarianOffset;
+	private final int typesOffset;
+	private final int nameOffsetsOffset;
+	private final int namesOffset;
+
+	private DishSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a dish snapshot");
+		}
+		if (this.buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported dish snapshot version " + this.buffer.getInt(4));
+		}
+		if (this.buffer.getInt(16) != TYPES.length) {
+			throw new IOException("The snapshot was written with " + this.buffer.getInt(16) + " dish types, not "
+					+ TYPES.length);
+		}
+		size = this.buffer.getInt(8);
+		nameChars = this.buffer.getInt(12);
+		long[] layout = layout(size, nameChars);
+		if (layout[5] > this.buffer.capacity()) {
+			throw new IOException("Truncated dish snapshot");
+		}
+		caloriesOffset = (int) layout[0];
+		vegetarianOffset = (int) layout[1];
+		typesOffset = (int) layout[2];
+		nameOffsetsOffset = (int) layout[3];
+		namesOffset = (int) layout[4];
+	}
+
+	// The offsets of the sections, and the total size.
+	private static long[] layout(int size, int nameChars) {
+		long calories = HEADER_SIZE;
+		long vegetarian = align(calories + 4L * size);
+		long types = align(vegetarian + 8L * ((size + 63) >>> 6));
+		long nameOffsets = align(types + size);
+		long names = align(nameOffsets + 4L * (size + 1));
+		long end = names + 2L * nameChars;
+		return new long[] { calories, vegetarian, types, nameOffsets, names, end };
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	public static DishSnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new DishSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static DishSnapshot read(ByteBuffer buffer) throws IOException {
+		return new DishSnapshot(buffer);
+	}
+
+	public static void write(Path file, List<Dish> menu) throws IOException {
+		int size = menu.size();
+		long chars = 0;
+		for (Dish d : menu) {
+			chars += d.getName().length();
+		}
+		long[] layout = layout(size, (int) Math.min(chars, Integer.MAX_VALUE));
+		if (chars > Integer.MAX_VALUE || layout[5] > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Menu too large for one snapshot: " + size + " dishes");
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout[5]);
+			ByteBuffer out = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(0, MAGIC);
+			out.putInt(4, VERSION);
+			out.putInt(8, size);
+			out.putInt(12, (int) chars);
+			out.putInt(16, TYPES.length);
+			int row = 0;
+			int nameOffset = 0;
+			long vegetarianWord = 0;
+			for (Dish d : menu) {
+				out.putInt((int) layout[0] + 4 * row, d.getCalories());
+				if (d.isVegetarian()) {
+					vegetarianWord |= 1L << row;
+				}
+				if ((row & 63) == 63 || row == size - 1) {
+					out.putLong((int) layout[1] + 8 * (row >>> 6), vegetarianWord);
+					vegetarianWord = 0;
+				}
+				out.put((int) layout[2] + row, (byte) d.getType().ordinal());
+				out.putInt((int) layout[3] + 4 * row, nameOffset);
+				String name = d.getName();
+				for (int i = 0; i < name.length(); i++) {
+					out.putChar((int) layout[4] + 2 * (nameOffset + i), name.charAt(i));
+				}
+				nameOffset += name.length();
+				row++;
+			}
+			out.putInt((int) layout[3] + 4 * size, nameOffset);
+			mapped.force();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCalories(int row) {
+		checkRow(row);
+		return buffer.getInt(caloriesOffset + 4 * row);
+	}
+
+	public boolean isVegetarian(int row) {
+		checkRow(row);
+		return (buffer.getLong(vegetarianOffset + 8 * (row >>> 6)) & (1L << row)) != 0;
+	}
+
+	public Dish.Type getType(int row) {
+		checkRow(row);
+		return TYPES[buffer.get(typesOffset + row)];
+	}
+
+	public String getName(int row) {
+		checkRow(row);
+		int start = buffer.getInt(nameOffsetsOffset + 4 * row);
+		int end = buffer.getInt(nameOffsetsOffset + 4 * (row + 1));
+		char[] name = new char[end - start];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buffer.getChar(namesOffset + 2 * (start + i));
+		}
+		return new String(name);
+	}
+
+	public Dish toDish(int row) {
+		return new Dish(getName(row), isVegetarian(row), getCalories(row), getType(row));
+	}
+
+	// A read-only list that creates the dishes as they are read.
+	public List<Dish> asList() {
+		return new AbstractList<Dish>() {
+			@Override
+			public Dish get(int index) {
+				return toDish(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	// Copies every column into a DishTable with one bulk copy per column.
+	public DishTable toDishTable() {
+		int[] calories = new int[size];
+		slice(caloriesOffset).asIntBuffer().get(calories);
+		long[] vegetarian = new long[(size + 63) >>> 6];
+		slice(vegetarianOffset).asLongBuffer().get(vegetarian);
+		byte[] types = new byte[size];
+		slice(typesOffset).get(types);
+		int[] nameOffsets = new int[size + 1];
+		slice(nameOffsetsOffset).asIntBuffer().get(nameOffsets);
+		char[] names = new char[nameChars];
+		slice(namesOffset).asCharBuffer().get(names);
+		return new DishTable(size, calories, vegetarian, types, nameOffsets, names);
+	}
+
+	private ByteBuffer slice(int offset) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset);
+		return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+		}
+	}
+}
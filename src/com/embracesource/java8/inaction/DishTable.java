@@ -0,0 +1,248 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import com.embracesource.java8.inaction.IntroducingStreams.Dish;
+
+/**
+ * A column oriented (struct-of-arrays) copy of a menu.
+ *
+ * Every attribute of {@link Dish} lives in its own primitive array, so a query
+ * over the calories only touches the calories column instead of chasing one
+ * pointer per row. Queries work on selection vectors: an int[] of row numbers in
+ * ascending order, which is what filter returns and what sort/project consume.
+ */
+public class DishTable {
+	private static final Dish.Type[] TYPES = Dish.Type.values();
+
+	private final int size;
+	private final int[] calories;
+	private final long[] vegetarian;	// one bit per row
+	private final byte[] types;			// Dish.Type ordinal
+	private final int[] nameOffsets;	// size + 1 entries, name i is names[nameOffsets[i], nameOffsets[i + 1])
+	private final char[] names;
+
+	DishTable(int size, int[] calories, long[] vegetarian, byte[] types, int[] nameOffsets, char[] names) {
+		this.size = size;
+		this.calories = calories;
+		this.vegetarian = vegetarian;
+		this.types = types;
+		this.nameOffsets = nameOffsets;
+		this.names = names;
+	}
+
+	public static DishTable of(List<Dish> menu) {
+		Builder builder = new Builder(menu.size());
+		for (Dish d : menu) {
+			builder.add(d.getName(), d.isVegetarian(), d.getCalories(), d.getType());
+		}
+		return builder.build();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCalories(int row) {
+		return calories[row];
+	}
+
+	public boolean isVegetarian(int row) {
+		return (vegetarian[row >>> 6] & (1L << row)) != 0;
+	}
+
+	public Dish.Type getType(int row) {
+		return TYPES[types[row]];
+	}
+
+	public String getName(int row) {
+		return new String(names, nameOffsets[row], nameOffsets[row + 1] - nameOffsets[row]);
+	}
+
+	public Dish toDish(int row) {
+		return new Dish(getName(row), isVegetarian(row), getCalories(row), getType(row));
+	}
+
+	// Filters
+	// The loops below don't branch on the data: the row number is always written and the
+	// cursor only advances when the row matches, which keeps them friendly to the JIT.
+	public int[] selectCaloriesLessThan(int limit) {
+		int[] selection = new int[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			selection[n] = i;
+			n += calories[i] < limit ? 1 : 0;
+		}
+		return Arrays.copyOf(selection, n);
+	}
+
+	public int[] selectCaloriesGreaterThan(int limit) {
+		int[] selection = new int[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			selection[n] = i;
+			n += calories[i] > limit ? 1 : 0;
+		}
+		return Arrays.copyOf(selection, n);
+	}
+
+	public int[] selectCalories(IntPredicate p) {
+		int[] selection = new int[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (p.test(calories[i])) {
+				selection[n++] = i;
+			}
+		}
+		return Arrays.copyOf(selection, n);
+	}
+
+	public int[] selectVegetarian() {
+		int[] selection = new int[size];
+		int n = 0;
+		for (int w = 0; w < vegetarian.length; w++) {
+			long word = vegetarian[w];
+			while (word != 0) {
+				selection[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return Arrays.copyOf(selection, n);
+	}
+
+	public int[] selectType(Dish.Type type) {
+		byte code = (byte) type.ordinal();
+		int[] selection = new int[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			selection[n] = i;
+			n += types[i] == code ? 1 : 0;
+		}
+		return Arrays.copyOf(selection, n);
+	}
+
+	// Sort
+	// Calories and row number are packed into one long, so a primitive sort orders the
+	// selection by calories and keeps equal calories in row order, like the stable sorted().
+	public int[] sortByCalories(int[] selection) {
+		long[] keys = new long[selection.length];
+		for (int i = 0; i < selection.length; i++) {
+			int row = selection[i];
+			keys[i] = ((long) calories[row] << 32) | row;
+		}
+		if (keys.length > 1 << 13) {
+			Arrays.parallelSort(keys);
+		} else {
+			Arrays.sort(keys);
+		}
+		int[] sorted = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			sorted[i] = (int) keys[i];
+		}
+		return sorted;
+	}
+
+	// Projections
+	public List<String> names(int[] selection) {
+		List<String> result = new ArrayList<>(selection.length);
+		for (int row : selection) {
+			result.add(getName(row));
+		}
+		return result;
+	}
+
+	public List<Dish> dishes(int[] selection) {
+		List<Dish> result = new ArrayList<>(selection.length);
+		for (int row : selection) {
+			result.add(toDish(row));
+		}
+		return result;
+	}
+
+	public int sumCalories() {
+		int sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += calories[i];
+		}
+		return sum;
+	}
+
+	public int sumCalories(int[] selection) {
+		int sum = 0;
+		for (int row : selection) {
+			sum += calories[row];
+		}
+		return sum;
+	}
+
+	// The menu queries of IntroducingStreams and WorkingWithStreams, column by column.
+	public List<String> getSortedLowCaloricDishesNames(int limit) {
+		return names(sortByCalories(selectCaloriesLessThan(limit)));
+	}
+
+	public List<Dish> getVegetarianMenu() {
+		return dishes(selectVegetarian());
+	}
+
+	public int getSumCalories() {
+		return sumCalories();
+	}
+
+	/**
+	 * Appends rows one by one without creating a {@link Dish} per row.
+	 */
+	public static class Builder {
+		private int size;
+		private int[] calories;
+		private long[] vegetarian;
+		private byte[] types;
+		private int[] nameOffsets;
+		private char[] names;
+
+		public Builder() {
+			this(16);
+		}
+
+		public Builder(int expectedSize) {
+			int capacity = Math.max(expectedSize, 1);
+			calories = new int[capacity];
+			vegetarian = new long[(capacity + 63) >>> 6];
+			types = new byte[capacity];
+			nameOffsets = new int[capacity + 1];
+			names = new char[capacity * 8];
+		}
+
+		public Builder add(String name, boolean isVegetarian, int calory, Dish.Type type) {
+			if (size == calories.length) {
+				int capacity = size + (size >>> 1) + 1;
+				calories = Arrays.copyOf(calories, capacity);
+				vegetarian = Arrays.copyOf(vegetarian, (capacity + 63) >>> 6);
+				types = Arrays.copyOf(types, capacity);
+				nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+			}
+			int start = nameOffsets[size];
+			int end = start + name.length();
+			if (end > names.length) {
+				names = Arrays.copyOf(names, Math.max(end, names.length + (names.length >>> 1)));
+			}
+			name.getChars(0, name.length(), names, start);
+			nameOffsets[size + 1] = end;
+			calories[size] = calory;
+			types[size] = (byte) type.ordinal();
+			if (isVegetarian) {
+				vegetarian[size >>> 6] |= 1L << size;
+			}
+			size++;
+			return this;
+		}
+
+		public DishTable build() {
+			return new DishTable(size, Arrays.copyOf(calories, size), Arrays.copyOf(vegetarian, (size + 63) >>> 6),
+					Arrays.copyOf(types, size), Arrays.copyOf(nameOffsets, size + 1),
+					Arrays.copyOf(names, nameOffsets[size]));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * Collects the distinct characters of a stream of words, the same list as
+ * {@code words.stream().map(w -> w.split("")).flatMap(Arrays::stream).distinct().collect(toList())},
+ * without creating a String per character.
+ *
+ * The words are scanned in place into a bitset of the 65536 chars, and every char is
+ * remembered in the order it is first seen; Strings are only created for the result. Like
+ * {@code split("")}, a surrogate pair gives two chars, and an empty word gives an empty String.
+ */
+public final class DistinctChars {
+	private static final int EMPTY = -1;
+
+	private DistinctChars() {
+	}
+
+	public static Collector<CharSequence, ?, List<String>> toList() {
+		return Collector.of(CharSet::new, CharSet::addAll, CharSet::merge, CharSet::toList);
+	}
+
+	public static List<String> of(Iterable<? extends CharSequence> words) {
+		CharSet chars = new CharSet();
+		for (CharSequence word : words) {
+			chars.addAll(word);
+		}
+		return chars.toList();
+	}
+
+	private static final class CharSet {
+		private final long[] seen = new long[1 << 10];
+		private boolean seenEmpty;
+		// chars in the order they were first seen, EMPTY for the empty word
+		private int[] order = new int[64];
+		private int size;
+
+		void addAll(CharSequence word) {
+			int length = word.length();
+			if (length == 0) {
+				if (!seenEmpty) {
+					seenEmpty = true;
+					append(EMPTY);
+				}
+				return;
+			}
+			for (int i = 0; i < length; i++) {
+				add(word.charAt(i));
+			}
+		}
+
+		private void add(int c) {
+			long bit = 1L << c;
+			if ((seen[c >>> 6] & bit) == 0) {
+				seen[c >>> 6] |= bit;
+				append(c);
+			}
+		}
+
+		private void append(int c) {
+			if (size == order.length) {
+				order = Arrays.copyOf(order, size * 2);
+			}
+			order[size++] = c;
+		}
+
+		// The right set was collected after this one, so its chars are appended in their order.
+		CharSet merge(CharSet right) {
+			for (int i = 0; i < right.size; i++) {
+				int c = right.order[i];
+				if (c == EMPTY) {
+					if (!seenEmpty) {
+						seenEmpty = true;
+						append(EMPTY);
+					}
+				} else {
+					add(c);
+				}
+			}
+			return this;
+		}
+
+		List<String> toList() {
+			List<String> chars = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				chars.add(order[i] == EMPTY ? "" : String.valueOf((char) order[i]));
+			}
+			return chars;
+		}
+	}
+}
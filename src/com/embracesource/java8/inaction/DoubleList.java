@@ -0,0 +1,126 @@
+package com.embracesource.java8.inaction;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.DoubleStream;
+
+/**
+ * A growable list of doubles backed by a double[], so filter, map and forEach never box.
+ */
+public class DoubleList {
+	private double[] elements;
+	private int size;
+
+	public DoubleList() {
+		this(10);
+	}
+
+	public DoubleList(int initialCapacity) {
+		elements = new double[initialCapacity];
+	}
+
+	public static DoubleList of(double... values) {
+		DoubleList list = new DoubleList(values.length);
+		System.arraycopy(values, 0, list.elements, 0, values.length);
+		list.size = values.length;
+		return list;
+	}
+
+	public void add(double value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, Math.max(8, size + (size >> 1)));
+		}
+		elements[size++] = value;
+	}
+
+	public double get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return elements[index];
+	}
+
+	public void set(int index, double value) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		elements[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public DoubleList filter(DoublePredicate p) {
+		DoubleList results = new DoubleList(size);
+		for (int i = 0; i < size; i++) {
+			if (p.test(elements[i])) {
+				results.elements[results.size++] = elements[i];
+			}
+		}
+		return results;
+	}
+
+	public DoubleList map(DoubleUnaryOperator f) {
+		DoubleList results = new DoubleList(size);
+		for (int i = 0; i < size; i++) {
+			results.elements[i] = f.applyAsDouble(elements[i]);
+		}
+		results.size = size;
+		return results;
+	}
+
+	public void forEach(DoubleConsumer c) {
+		for (int i = 0; i < size; i++) {
+			c.accept(elements[i]);
+		}
+	}
+
+	public double[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	public DoubleStream stream() {
+		return Arrays.stream(elements, 0, size);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof DoubleList)) {
+			return false;
+		}
+		DoubleList other = (DoubleList) o;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (Double.doubleToLongBits(elements[i]) != Double.doubleToLongBits(other.elements[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + Double.hashCode(elements[i]);
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
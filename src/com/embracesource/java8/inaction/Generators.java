@@ -0,0 +1,330 @@
+package com.embracesource.java8.inaction;
+
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sources for the streams that {@code Stream.iterate} and {@code Stream.generate} are used for,
+ * that split well in parallel.
+ *
+ * {@code Stream.iterate(0, n -> n + 2)} can only be split by walking it element by element, and
+ * {@code Stream.generate(Math::random)} makes every thread contend on one Random. Here the nth
+ * element of an arithmetic or geometric sequence is computed directly, so a sequence splits in
+ * two in O(log n) at worst, and random numbers come from a SplittableRandom that splits with the
+ * stream. All the sources are sized, also the "infinite" ones (of Long.MAX_VALUE elements), so a
+ * parallel {@code limit(n)} cuts them into slices instead of buffering.
+ *
+ * int and long sequences wrap around on overflow exactly as iterating would. double sequences
+ * compute the first element of every split part as {@code start + i * step} or
+ * {@code start * Math.pow(ratio, i)}, which may differ from repeated addition or multiplication
+ * in the last bits.
+ */
+public final class Generators {
+	private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+			| Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+	private Generators() {
+	}
+
+	// start, start + step, start + 2 * step, ... like IntStream.iterate(start, n -> n + step)
+	public static IntStream intArithmetic(int start, int step) {
+		return intArithmetic(start, step, Long.MAX_VALUE);
+	}
+
+	public static IntStream intArithmetic(int start, int step, long count) {
+		return StreamSupport.intStream(new IntSequence(start, step, false, 0, checkCount(count)), false);
+	}
+
+	// start, start * ratio, start * ratio * ratio, ...
+	public static IntStream intGeometric(int start, int ratio) {
+		return intGeometric(start, ratio, Long.MAX_VALUE);
+	}
+
+	public static IntStream intGeometric(int start, int ratio, long count) {
+		return StreamSupport.intStream(new IntSequence(start, ratio, true, 0, checkCount(count)), false);
+	}
+
+	public static LongStream longArithmetic(long start, long step) {
+		return longArithmetic(start, step, Long.MAX_VALUE);
+	}
+
+	public static LongStream longArithmetic(long start, long step, long count) {
+		return StreamSupport.longStream(new LongSequence(start, step, false, 0, checkCount(count)), false);
+	}
+
+	public static LongStream longGeometric(long start, long ratio) {
+		return longGeometric(start, ratio, Long.MAX_VALUE);
+	}
+
+	public static LongStream longGeometric(long start, long ratio, long count) {
+		return StreamSupport.longStream(new LongSequence(start, ratio, true, 0, checkCount(count)), false);
+	}
+
+	public static DoubleStream doubleArithmetic(double start, double step) {
+		return doubleArithmetic(start, step, Long.MAX_VALUE);
+	}
+
+	public static DoubleStream doubleArithmetic(double start, double step, long count) {
+		return StreamSupport.doubleStream(new DoubleSequence(start, step, false, 0, checkCount(count)), false);
+	}
+
+	public static DoubleStream doubleGeometric(double start, double ratio) {
+		return doubleGeometric(start, ratio, Long.MAX_VALUE);
+	}
+
+	public static DoubleStream doubleGeometric(double start, double ratio, long count) {
+		return StreamSupport.doubleStream(new DoubleSequence(start, ratio, true, 0, checkCount(count)), false);
+	}
+
+	// Like Stream.generate(Math::random), without a shared Random.
+	public static DoubleStream randomDoubles() {
+		return new SplittableRandom().doubles();
+	}
+
+	public static DoubleStream randomDoubles(long seed) {
+		return new SplittableRandom(seed).doubles();
+	}
+
+	public static IntStream randomInts(int origin, int bound) {
+		return new SplittableRandom().ints(origin, bound);
+	}
+
+	public static IntStream randomInts(long seed, int origin, int bound) {
+		return new SplittableRandom(seed).ints(origin, bound);
+	}
+
+	public static LongStream randomLongs() {
+		return new SplittableRandom().longs();
+	}
+
+	public static LongStream randomLongs(long seed) {
+		return new SplittableRandom(seed).longs();
+	}
+
+	private static long checkCount(long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative: " + count);
+		}
+		return count;
+	}
+
+	// base^exponent, wrapping around like repeated multiplication does
+	private static long pow(long base, long exponent) {
+		long result = 1;
+		while (exponent != 0) {
+			if ((exponent & 1) != 0) {
+				result *= base;
+			}
+			base *= base;
+			exponent >>>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * The elements index to fence of a sequence, with next the element at index.
+	 */
+	private static final class IntSequence implements Spliterator.OfInt {
+		private final int start;
+		private final int step;
+		private final boolean geometric;
+		private long index;
+		private final long fence;
+		private int next;
+
+		IntSequence(int start, int step, boolean geometric, long index, long fence) {
+			this.start = start;
+			this.step = step;
+			this.geometric = geometric;
+			this.index = index;
+			this.fence = fence;
+			this.next = (int) (geometric ? start * pow(step, index) : start + step * index);
+		}
+
+		@Override
+		public OfInt trySplit() {
+			long mid = index + (fence - index) / 2;
+			if (mid <= index) {
+				return null;
+			}
+			IntSequence prefix = new IntSequence(start, step, geometric, index, mid);
+			index = mid;
+			next = (int) (geometric ? start * pow(step, mid) : start + step * mid);
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(IntConsumer action) {
+			if (index >= fence) {
+				return false;
+			}
+			int value = next;
+			next = geometric ? value * step : value + step;
+			index++;
+			action.accept(value);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(IntConsumer action) {
+			int value = next;
+			for (long i = index; i < fence; i++) {
+				action.accept(value);
+				value = geometric ? value * step : value + step;
+			}
+			index = fence;
+			next = value;
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+	private static final class LongSequence implements Spliterator.OfLong {
+		private final long start;
+		private final long step;
+		private final boolean geometric;
+		private long index;
+		private final long fence;
+		private long next;
+
+		LongSequence(long start, long step, boolean geometric, long index, long fence) {
+			this.start = start;
+			this.step = step;
+			this.geometric = geometric;
+			this.index = index;
+			this.fence = fence;
+			this.next = geometric ? start * pow(step, index) : start + step * index;
+		}
+
+		@Override
+		public OfLong trySplit() {
+			long mid = index + (fence - index) / 2;
+			if (mid <= index) {
+				return null;
+			}
+			LongSequence prefix = new LongSequence(start, step, geometric, index, mid);
+			index = mid;
+			next = geometric ? start * pow(step, mid) : start + step * mid;
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(LongConsumer action) {
+			if (index >= fence) {
+				return false;
+			}
+			long value = next;
+			next = geometric ? value * step : value + step;
+			index++;
+			action.accept(value);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(LongConsumer action) {
+			long value = next;
+			for (long i = index; i < fence; i++) {
+				action.accept(value);
+				value = geometric ? value * step : value + step;
+			}
+			index = fence;
+			next = value;
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+	private static final class DoubleSequence implements Spliterator.OfDouble {
+		private final double start;
+		private final double step;
+		private final boolean geometric;
+		private long index;
+		private final long fence;
+		private double next;
+
+		DoubleSequence(double start, double step, boolean geometric, long index, long fence) {
+			this.start = start;
+			this.step = step;
+			this.geometric = geometric;
+			this.index = index;
+			this.fence = fence;
+			this.next = at(index);
+		}
+
+		private double at(long i) {
+			if (i == 0) {
+				return start;
+			}
+			return geometric ? start * Math.pow(step, i) : start + i * step;
+		}
+
+		@Override
+		public OfDouble trySplit() {
+			long mid = index + (fence - index) / 2;
+			if (mid <= index) {
+				return null;
+			}
+			DoubleSequence prefix = new DoubleSequence(start, step, geometric, index, mid);
+			prefix.next = next;
+			index = mid;
+			next = at(mid);
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(DoubleConsumer action) {
+			if (index >= fence) {
+				return false;
+			}
+			double value = next;
+			next = geometric ? value * step : value + step;
+			index++;
+			action.accept(value);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(DoubleConsumer action) {
+			double value = next;
+			for (long i = index; i < fence; i++) {
+				action.accept(value);
+				value = geometric ? value * step : value + step;
+			}
+			index = fence;
+			next = value;
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+}
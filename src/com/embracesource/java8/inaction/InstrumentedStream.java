@@ -0,0 +1,150 @@
+package com.embracesource.java8.inaction;
+
+import java.util.Comparator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import com.embracesource.java8.inaction.PipelineMetrics.Stage;
+import com.embracesource.java8.inaction.PipelineMetrics.ThreadCounters;
+
+/**
+ * A stream wrapper that records, for every stage of a pipeline, the elements in and out and the
+ * wall time, CPU time and memory allocated on every thread, into {@link PipelineMetrics}.
+ *
+ * Stages are measured by timing the functions passed to them, so a stage's time is its own:
+ * the time of the later stages, which a stream runs from inside the earlier ones, is not
+ * counted twice. sorted() is measured by its comparisons, and collect() by its accumulator.
+ *
+ * Instrumentation is off unless the system property {@code com.embracesource.java8.instrumentStreams}
+ * is true or {@link #setEnabled(boolean)} turns it on; when it is off the wrapper hands the
+ * functions to the stream as they are, and costs nothing per element.
+ */
+public final class InstrumentedStream<T> {
+	private static volatile boolean enabled = Boolean.getBoolean("com.embracesource.java8.instrumentStreams");
+
+	private final Stream<T> stream;
+	private final PipelineMetrics metrics;	// null when instrumentation is off
+	private final int stages;
+
+	private InstrumentedStream(Stream<T> stream, PipelineMetrics metrics, int stages) {
+		this.stream = stream;
+		this.metrics = metrics;
+		this.stages = stages;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		InstrumentedStream.enabled = enabled;
+	}
+
+	// Runs of the same pipeline name add up into the same metrics.
+	public static <T> InstrumentedStream<T> of(String pipeline, Stream<T> stream) {
+		return new InstrumentedStream<>(stream, enabled ? PipelineMetrics.get(pipeline) : null, 0);
+	}
+
+	private <R> InstrumentedStream<R> next(Stream<R> next) {
+		return new InstrumentedStream<>(next, metrics, stages + 1);
+	}
+
+	public InstrumentedStream<T> filter(Predicate<? super T> predicate) {
+		if (metrics == null) {
+			return next(stream.filter(predicate));
+		}
+		Stage stage = metrics.stage(stages, "filter");
+		return next(stream.filter(t -> {
+			ThreadCounters counters = stage.counters();
+			counters.start();
+			boolean match = predicate.test(t);
+			counters.stop(1, match ? 1 : 0);
+			return match;
+		}));
+	}
+
+	public <R> InstrumentedStream<R> map(Function<? super T, ? extends R> mapper) {
+		if (metrics == null) {
+			return next(stream.map(mapper));
+		}
+		Stage stage = metrics.stage(stages, "map");
+		return next(stream.map(t -> {
+			ThreadCounters counters = stage.counters();
+			counters.start();
+			R r = mapper.apply(t);
+			counters.stop(1, 1);
+			return r;
+		}));
+	}
+
+	// Elements must be Comparable, as for Stream.sorted().
+	@SuppressWarnings("unchecked")
+	public InstrumentedStream<T> sorted() {
+		if (metrics == null) {
+			return next(stream.sorted());
+		}
+		return sorted((Comparator<? super T>) Comparator.naturalOrder());
+	}
+
+	public InstrumentedStream<T> sorted(Comparator<? super T> comparator) {
+		if (metrics == null) {
+			return next(stream.sorted(comparator));
+		}
+		Stage stage = metrics.stage(stages, "sorted");
+		return next(stream
+				.peek(t -> stage.counters().countIn())
+				.sorted((a, b) -> {
+					ThreadCounters counters = stage.counters();
+					counters.start();
+					int result = comparator.compare(a, b);
+					counters.stop(0, 0);
+					return result;
+				})
+				.peek(t -> stage.counters().countOut()));
+	}
+
+	public <R, A> R collect(Collector<? super T, A, R> collector) {
+		if (metrics == null) {
+			return stream.collect(collector);
+		}
+		Stage stage = metrics.stage(stages, "collect");
+		BiConsumer<A, ? super T> accumulator = collector.accumulator();
+		Collector<T, A, R> instrumented = Collector.of(collector.supplier(), (a, t) -> {
+			ThreadCounters counters = stage.counters();
+			counters.start();
+			accumulator.accept(a, t);
+			counters.stop(1, 0);
+		}, collector.combiner(), collector.finisher(),
+				collector.characteristics().toArray(new Collector.Characteristics[0]));
+		R result = stream.collect(instrumented);
+		stage.counters().countOut();
+		return result;
+	}
+
+	public void forEach(Consumer<? super T> action) {
+		if (metrics == null) {
+			stream.forEach(action);
+			return;
+		}
+		Stage stage = metrics.stage(stages, "forEach");
+		stream.forEach(t -> {
+			ThreadCounters counters = stage.counters();
+			counters.start();
+			action.accept(t);
+			counters.stop(1, 0);
+		});
+	}
+
+	public InstrumentedStream<T> parallel() {
+		return new InstrumentedStream<>(stream.parallel(), metrics, stages);
+	}
+
+	// The underlying stream, to carry on with operations that aren't instrumented.
+	public Stream<T> stream() {
+		return stream;
+	}
+}
@@ -0,0 +1,126 @@
+package com.embracesource.java8.inaction;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A growable list of ints backed by an int[], so filter, map and forEach never box.
+ */
+public class IntList {
+	private int[] elements;
+	private int size;
+
+	public IntList() {
+		this(10);
+	}
+
+	public IntList(int initialCapacity) {
+		elements = new int[initialCapacity];
+	}
+
+	public static IntList of(int... values) {
+		IntList list = new IntList(values.length);
+		System.arraycopy(values, 0, list.elements, 0, values.length);
+		list.size = values.length;
+		return list;
+	}
+
+	public void add(int value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, Math.max(8, size + (size >> 1)));
+		}
+		elements[size++] = value;
+	}
+
+	public int get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return elements[index];
+	}
+
+	public void set(int index, int value) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		elements[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public IntList filter(IntPredicate p) {
+		IntList results = new IntList(size);
+		for (int i = 0; i < size; i++) {
+			if (p.test(elements[i])) {
+				results.elements[results.size++] = elements[i];
+			}
+		}
+		return results;
+	}
+
+	public IntList map(IntUnaryOperator f) {
+		IntList results = new IntList(size);
+		for (int i = 0; i < size; i++) {
+			results.elements[i] = f.applyAsInt(elements[i]);
+		}
+		results.size = size;
+		return results;
+	}
+
+	public void forEach(IntConsumer c) {
+		for (int i = 0; i < size; i++) {
+			c.accept(elements[i]);
+		}
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	public IntStream stream() {
+		return Arrays.stream(elements, 0, size);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof IntList)) {
+			return false;
+		}
+		IntList other = (IntList) o;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != other.elements[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + elements[i];
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
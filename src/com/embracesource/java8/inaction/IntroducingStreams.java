@@ -1,10 +1,14 @@
 package com.embracesource.java8.inaction;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
@@ -72,6 +76,9 @@ public class IntroducingStreams {
 			new Dish("prawns", false, 300, Dish.Type.FISH),
 			new Dish("salmon", false, 450, Dish.Type.FISH));
 
+	// Built once, not per query: copying the menu into columns costs more than the query itself.
+	DishTable menuTable = DishTable.of(menu);
+
 	// What's you have to do in Java7.
 	public List<String> getSortedLowCaloricDishesNamesJava7() {
 		List<Dish> menu = new ArrayList<>();
@@ -118,6 +125,52 @@ public class IntroducingStreams {
 		return lowCaloricDishesNames;
 	}
 
+	// A parallel stream runs in the ForkJoinPool of the task that starts it, so a QueryExecutor can run the same
+	// query on a pool of its own, with a deadline, and leave the common pool to everything else:
+	private static final QueryExecutor analyticsExecutor = new QueryExecutor("analytics", 2, 16);
+
+	public List<String> getSortedLowCaloricDishesNamesOnOwnPool() throws TimeoutException, InterruptedException {
+		List<String> lowCaloricDishesNames = analyticsExecutor.execute(() -> menu.parallelStream()
+				.filter(d -> d.getCalories() < 400)
+				.sorted(comparing(Dish::getCalories))
+				.map(Dish::getName).collect(toList()), 1, TimeUnit.SECONDS);
+		return lowCaloricDishesNames;
+	}
+
+	// For very large menus the same query can run over a column oriented copy of the menu (see DishTable),
+	// where the filter and the sort only touch an int[] of calories:
+	public List<String> getSortedLowCaloricDishesNamesColumnar() {
+		return menuTable.getSortedLowCaloricDishesNames(400);
+	}
+
+	// Written once with DishSnapshot.write, a menu is loaded again by mapping the file, without
+	// parsing it or creating a Dish per row:
+	public List<String> getSortedLowCaloricDishesNamesFromSnapshot(Path snapshot) throws IOException {
+		DishTable table = DishSnapshot.open(snapshot).toDishTable();
+		return table.getSortedLowCaloricDishesNames(400);
+	}
+
+	// When the menu changes a few dishes at a time but is queried all the time, a LiveMenu keeps the
+	// result of the query up to date as dishes come and go, instead of running it again:
+	public List<String> getSortedLowCaloricDishesNamesLive() {
+		LiveMenu liveMenu = LiveMenu.of(menu);
+		LiveMenu.ListView<String> lowCaloricDishesNames =
+				liveMenu.sorted(d -> d.getCalories() < 400, comparing(Dish::getCalories), Dish::getName);
+		liveMenu.add(new Dish("salad", true, 150, Dish.Type.OTHER));
+		return lowCaloricDishesNames.get();	// [season fruit, salad, prawns, rice]
+	}
+
+	// To see which stage of the pipeline takes the time, run it through an InstrumentedStream with
+	// -Dcom.embracesource.java8.instrumentStreams=true, then look at PipelineMetrics.dumpAll() or JMX.
+	public List<String> getSortedLowCaloricDishesNamesInstrumented() {
+		List<String> lowCaloricDishesNames = InstrumentedStream.of("getSortedLowCaloricDishesNames", menu.parallelStream())
+				.filter(d -> d.getCalories() < 400)
+				.sorted(comparing(Dish::getCalories))
+				.map(Dish::getName)
+				.collect(toList());
+		return lowCaloricDishesNames;
+	}
+
 	// To summarize, the Streams API in Java 8 lets you write code that’s
 	//  Declarative— More concise and readable
 	//  Composable— Greater flexibility
@@ -138,6 +191,18 @@ public class IntroducingStreams {
 		return threeHighCaloricDishName;
 	}
 	
+	// The three dishes with the most calories, kept in a bounded heap instead of sorting the menu.
+	public List<String> getThreeHighestCaloricDishNames() {
+		List<String> threeHighestCaloricDishNames =
+				menu.stream()
+				.collect(TopK.greatest(3, comparing(Dish::getCalories)))
+				.stream()
+				.map(Dish::getName)
+				.collect(toList());
+		System.out.println(threeHighestCaloricDishNames);
+		return threeHighestCaloricDishNames;
+	}
+
 	//4.3. Streams vs. collections
 	//A Collection in Java8 is like a movie stored in DVD; A Stream in Java8 is like a movie streamed over the Internet.
 	
@@ -4,17 +4,30 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import com.embracesource.java8.Apple;
+import com.embracesource.java8.ColorDictionary;
+import com.embracesource.java8.KeySort;
 
 import static java.util.Comparator.comparing;
 
@@ -64,6 +77,19 @@ public class LambaExpressions {
 		}
 	}
 
+	// The same behavior can run over many files in parallel (see ParallelFileProcessor), reading through
+	// NIO channels into pooled direct buffers; the results of the files are merged in order:
+	private static final ParallelFileProcessor fileProcessor = new ParallelFileProcessor();
+
+	public static String processFiles(List<Path> files, BufferedReaderProcessor p, BinaryOperator<String> merger) {
+		try {
+			return fileProcessor.processFiles(files, p, merger).orElse(null);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
 	// 3.3.4. Step 4: Pass lambdas
 	//Processing one line:
 	String oneLine = processFile((BufferedReader br) -> br.readLine());
@@ -106,6 +132,44 @@ public class LambaExpressions {
 	//Primitive specializations
 	//We described three functional interfaces that are generic: Predicate<T>, Consumer<T>, and
 	//Function<T, R>. There are also functional interfaces that are specialized with certain types.
+	//With a List<Integer> every element is boxed, and so is every argument of a Predicate<Integer>.
+	//IntList, LongList and DoubleList keep the elements in a primitive array, and the same helpers
+	//taking IntPredicate, IntUnaryOperator and IntConsumer never box:
+	public static IntList filter(IntList list, IntPredicate p) {
+		return list.filter(p);
+	}
+
+	public static void forEach(IntList list, IntConsumer c) {
+		list.forEach(c);
+	}
+
+	public static IntList map(IntList list, IntUnaryOperator f) {
+		return list.map(f);
+	}
+
+	public static LongList filter(LongList list, LongPredicate p) {
+		return list.filter(p);
+	}
+
+	public static void forEach(LongList list, LongConsumer c) {
+		list.forEach(c);
+	}
+
+	public static LongList map(LongList list, LongUnaryOperator f) {
+		return list.map(f);
+	}
+
+	public static DoubleList filter(DoubleList list, DoublePredicate p) {
+		return list.filter(p);
+	}
+
+	public static void forEach(DoubleList list, DoubleConsumer c) {
+		list.forEach(c);
+	}
+
+	public static DoubleList map(DoubleList list, DoubleUnaryOperator f) {
+		return list.map(f);
+	}
 
 	//Note that none of the functional interfaces allow for a checked exception to be thrown. You have
 	//two options if you need a lambda expression to throw an exception: define your own functional
@@ -278,16 +342,25 @@ public class LambaExpressions {
 	public static void sortInventory6() {
 		inventory.sort(comparing(Apple::getWeight).reversed().thenComparing(Apple::getColor));
 	}
+	//The same order with KeySort, which reads the weight and the color of every apple once and sorts
+	//packed primitive keys instead of calling the comparator's getters on every comparison:
+	public static void sortInventory7() {
+		KeySort.comparingInt(Apple::getWeight).reversed().thenComparing(Apple::getColor).sort(inventory);
+	}
 	
 	//3.8.2. Composing Predicates
 	//The Predicate interface includes three methods that let you reuse an existing Predicate to create
 	//more complicated ones: negate, and, and or. 
-	Predicate<Apple> redApple = (Apple a) -> "red".equals(a.getColor());
+	Predicate<Apple> redApple = (Apple a) -> a.getColorCode() == ColorDictionary.RED;
 	Predicate<Apple> notRedApple = redApple.negate();
 	//You may want to combine two lambdas to say that an apple is both red and heavy with the and method:
 	Predicate<Apple> redAndHeavyApple = redApple.and(a -> a.getWeight() > 150);
 	//You can combine the resulting predicate one step further to express apples that are red and heavy (above 150 g) or just green apples:
-	Predicate<Apple> redAndHeaveAppleOrGreen = redApple.and(a -> a.getWeight() > 150).or(a -> "green".equals(a.getColor()));
+	Predicate<Apple> redAndHeaveAppleOrGreen = redApple.and(a -> a.getWeight() > 150).or(a -> a.getColorCode() == ColorDictionary.GREEN);
+	//Each and/or wraps the previous lambdas in a new one. When the same condition is built from AppleCondition
+	//instead, compile() flattens it into a single predicate class with no nested lambdas:
+	Predicate<Apple> redAndHeaveAppleOrGreenCompiled = AppleCondition.colorIs("red")
+			.and(AppleCondition.weightAbove(150)).or(AppleCondition.colorIs("green")).compile();
 	
 	//3.8.3. Composing Functions
 	//Finally, you can also compose lambda expressions represented by the Function interface. The
@@ -328,6 +401,9 @@ public class LambaExpressions {
 		System.out.println("-----");
 		List<Integer> integers = map(Arrays.asList("lambda", "in", "action"), (String s) -> s.length());
 		System.out.println(integers);
+		System.out.println("-----");
+		IntList evenNumbers = filter(IntList.of(1, 2, 3, 4, 5), (int i) -> i % 2 == 0);
+		forEach(map(evenNumbers, (int i) -> i * i), (int i) -> System.out.print(i));
 	}
 	
 	
@@ -0,0 +1,267 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import com.embracesource.java8.inaction.IntroducingStreams.Dish;
+
+/**
+ * A mutable menu with views that are kept up to date as dishes are added, updated and removed,
+ * instead of being recomputed from the whole menu on every query.
+ *
+ * A view is defined by the same shapes as a stream query: a filter and a map
+ * ({@link #filter(Predicate, Function)}), a filter, a sort and a map
+ * ({@link #sorted(Predicate, Comparator, Function)}), or a filter and a sum
+ * ({@link #sum(Predicate, ToIntFunction)}). Every change to the menu only touches the rows it
+ * changes in every view, and reading a view costs O(1) until the next change, then O(result)
+ * once to rebuild its list.
+ *
+ * The menu is thread safe; changes are serialized on the menu.
+ */
+public class LiveMenu {
+	private final Map<Long, Dish> dishes = new HashMap<>();
+	private final List<MaintainedView> views = new ArrayList<>();
+	private long nextId;
+
+	public static LiveMenu of(Collection<Dish> menu) {
+		LiveMenu liveMenu = new LiveMenu();
+		for (Dish dish : menu) {
+			liveMenu.add(dish);
+		}
+		return liveMenu;
+	}
+
+	// Adds a dish and returns its id.
+	public synchronized long add(Dish dish) {
+		long id = nextId++;
+		dishes.put(id, dish);
+		for (MaintainedView view : views) {
+			view.inserted(id, dish);
+		}
+		return id;
+	}
+
+	// Replaces the dish with the given id, and returns the dish it replaced.
+	public synchronized Dish update(long id, Dish dish) {
+		Dish old = dishes.get(id);
+		if (old == null) {
+			throw new IllegalArgumentException("No dish with id " + id);
+		}
+		dishes.put(id, dish);
+		for (MaintainedView view : views) {
+			view.deleted(id, old);
+			view.inserted(id, dish);
+		}
+		return old;
+	}
+
+	// Removes the dish with the given id, and returns it, or null if there was none.
+	public synchronized Dish remove(long id) {
+		Dish old = dishes.remove(id);
+		if (old != null) {
+			for (MaintainedView view : views) {
+				view.deleted(id, old);
+			}
+		}
+		return old;
+	}
+
+	public synchronized Dish get(long id) {
+		return dishes.get(id);
+	}
+
+	public synchronized int size() {
+		return dishes.size();
+	}
+
+	// Like menu.stream().filter(predicate).map(mapper).collect(toList()), in the order the dishes were added.
+	public <R> ListView<R> filter(Predicate<? super Dish> predicate, Function<? super Dish, ? extends R> mapper) {
+		return register(new FilterView<R>(predicate, mapper));
+	}
+
+	// Like menu.stream().filter(predicate).sorted(comparator).map(mapper).collect(toList()).
+	public <R> ListView<R> sorted(Predicate<? super Dish> predicate, Comparator<? super Dish> comparator,
+			Function<? super Dish, ? extends R> mapper) {
+		return register(new SortedView<R>(predicate, comparator, mapper));
+	}
+
+	// Like menu.stream().filter(predicate).mapToInt(value).sum(), and the count and average that go with it.
+	public SumView sum(Predicate<? super Dish> predicate, ToIntFunction<? super Dish> value) {
+		return register(new SumView(predicate, value));
+	}
+
+	private synchronized <V extends MaintainedView> V register(V view) {
+		for (Map.Entry<Long, Dish> entry : dishes.entrySet()) {
+			view.inserted(entry.getKey(), entry.getValue());
+		}
+		views.add(view);
+		return view;
+	}
+
+	abstract static class MaintainedView {
+		abstract void inserted(long id, Dish dish);
+
+		abstract void deleted(long id, Dish dish);
+	}
+
+	/**
+	 * A view whose value is a list. The list is an unmodifiable snapshot that stays valid after
+	 * later changes to the menu.
+	 */
+	public abstract class ListView<R> extends MaintainedView {
+		private volatile List<R> snapshot;
+
+		public List<R> get() {
+			List<R> list = snapshot;
+			if (list == null) {
+				synchronized (LiveMenu.this) {
+					list = snapshot;
+					if (list == null) {
+						list = Collections.unmodifiableList(new ArrayList<>(values()));
+						snapshot = list;
+					}
+				}
+			}
+			return list;
+		}
+
+		// Called with the menu locked, after every change that touches the view.
+		void invalidate() {
+			snapshot = null;
+		}
+
+		abstract Collection<R> values();
+	}
+
+	private final class FilterView<R> extends ListView<R> {
+		private final Predicate<? super Dish> predicate;
+		private final Function<? super Dish, ? extends R> mapper;
+		private final TreeMap<Long, R> rows = new TreeMap<>();
+
+		FilterView(Predicate<? super Dish> predicate, Function<? super Dish, ? extends R> mapper) {
+			this.predicate = predicate;
+			this.mapper = mapper;
+		}
+
+		@Override
+		void inserted(long id, Dish dish) {
+			if (predicate.test(dish)) {
+				rows.put(id, mapper.apply(dish));
+				invalidate();
+			}
+		}
+
+		@Override
+		void deleted(long id, Dish dish) {
+			if (rows.remove(id) != null || predicate.test(dish)) {
+				invalidate();
+			}
+		}
+
+		@Override
+		Collection<R> values() {
+			return rows.values();
+		}
+	}
+
+	private final class SortedView<R> extends ListView<R> {
+		private final Predicate<? super Dish> predicate;
+		private final Function<? super Dish, ? extends R> mapper;
+		// sorted by the comparator, then by id so that equal dishes keep the order they were added in
+		private final TreeMap<Row, R> rows;
+
+		SortedView(Predicate<? super Dish> predicate, Comparator<? super Dish> comparator,
+				Function<? super Dish, ? extends R> mapper) {
+			this.predicate = predicate;
+			this.mapper = mapper;
+			this.rows = new TreeMap<>(Comparator.<Row, Dish>comparing(row -> row.dish, comparator)
+					.thenComparingLong(row -> row.id));
+		}
+
+		@Override
+		void inserted(long id, Dish dish) {
+			if (predicate.test(dish)) {
+				rows.put(new Row(id, dish), mapper.apply(dish));
+				invalidate();
+			}
+		}
+
+		@Override
+		void deleted(long id, Dish dish) {
+			if (predicate.test(dish)) {
+				rows.remove(new Row(id, dish));
+				invalidate();
+			}
+		}
+
+		@Override
+		Collection<R> values() {
+			return rows.values();
+		}
+	}
+
+	private static final class Row {
+		final long id;
+		final Dish dish;
+
+		Row(long id, Dish dish) {
+			this.id = id;
+			this.dish = dish;
+		}
+	}
+
+	public final class SumView extends MaintainedView {
+		private final Predicate<? super Dish> predicate;
+		private final ToIntFunction<? super Dish> value;
+		private long sum;
+		private long count;
+
+		SumView(Predicate<? super Dish> predicate, ToIntFunction<? super Dish> value) {
+			this.predicate = predicate;
+			this.value = value;
+		}
+
+		@Override
+		void inserted(long id, Dish dish) {
+			if (predicate.test(dish)) {
+				sum += value.applyAsInt(dish);
+				count++;
+			}
+		}
+
+		@Override
+		void deleted(long id, Dish dish) {
+			if (predicate.test(dish)) {
+				sum -= value.applyAsInt(dish);
+				count--;
+			}
+		}
+
+		public long getSum() {
+			synchronized (LiveMenu.this) {
+				return sum;
+			}
+		}
+
+		public long getCount() {
+			synchronized (LiveMenu.this) {
+				return count;
+			}
+		}
+
+		public double getAverage() {
+			synchronized (LiveMenu.this) {
+				return count > 0 ? (double) sum / count : 0.0;
+			}
+		}
+	}
+}
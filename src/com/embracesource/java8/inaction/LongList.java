@@ -0,0 +1,126 @@
+package com.embracesource.java8.inaction;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * A growable list of longs backed by a long[], so filter, map and forEach never box.
+ */
+public class LongList {
+	private long[] elements;
+	private int size;
+
+	public LongList() {
+		this(10);
+	}
+
+	public LongList(int initialCapacity) {
+		elements = new long[initialCapacity];
+	}
+
+	public static LongList of(long... values) {
+		LongList list = new LongList(values.length);
+		System.arraycopy(values, 0, list.elements, 0, values.length);
+		list.size = values.length;
+		return list;
+	}
+
+	public void add(long value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, Math.max(8, size + (size >> 1)));
+		}
+		elements[size++] = value;
+	}
+
+	public long get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return elements[index];
+	}
+
+	public void set(int index, long value) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		elements[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public LongList filter(LongPredicate p) {
+		LongList results = new LongList(size);
+		for (int i = 0; i < size; i++) {
+			if (p.test(elements[i])) {
+				results.elements[results.size++] = elements[i];
+			}
+		}
+		return results;
+	}
+
+	public LongList map(LongUnaryOperator f) {
+		LongList results = new LongList(size);
+		for (int i = 0; i < size; i++) {
+			results.elements[i] = f.applyAsLong(elements[i]);
+		}
+		results.size = size;
+		return results;
+	}
+
+	public void forEach(LongConsumer c) {
+		for (int i = 0; i < size; i++) {
+			c.accept(elements[i]);
+		}
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	public LongStream stream() {
+		return Arrays.stream(elements, 0, size);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof LongList)) {
+			return false;
+		}
+		LongList other = (LongList) o;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != other.elements[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + Long.hashCode(elements[i]);
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,241 @@
+package com.embracesource.java8.inaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BinaryOperator;
+
+import com.embracesource.java8.inaction.LambaExpressions.BufferedReaderProcessor;
+
+/**
+ * The execute around pattern of {@link LambaExpressions#processFile(BufferedReaderProcessor)},
+ * scaled out: a {@link BufferedReaderProcessor} runs over many files, or over the line
+ * aligned ranges of one large file, in parallel, and the results are merged in order.
+ *
+ * The readers handed to the processor read through a {@link FileChannel} into direct
+ * buffers taken from a pool, so a batch over thousands of files doesn't allocate a new
+ * buffer per file.
+ *
+ * A processor may return null, as {@code br -> br.readLine()} does for an empty file or range;
+ * null results are left out of the merge. A file is only split into ranges when the charset
+ * encodes '\n' as the single byte 0x0A, so that a range never ends inside a character; in
+ * UTF-16, for example, the whole file is one range.
+ */
+public class ParallelFileProcessor {
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final long MIN_RANGE = 1 << 20;
+
+	private final Charset charset;
+	private final int bufferSize;
+	private final boolean splittable;	// true if the byte 0x0A is always a '\n'
+	private final BlockingQueue<ByteBuffer> buffers;
+
+	public ParallelFileProcessor() {
+		this(Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+	}
+
+	public ParallelFileProcessor(Charset charset, int bufferSize) {
+		this.charset = charset;
+		this.bufferSize = bufferSize;
+		this.splittable = encodesNewlineAsOneByte(charset);
+		this.buffers = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	// One processor call per file, the results merged in the order of the files.
+	public Optional<String> processFiles(List<Path> files, BufferedReaderProcessor p, BinaryOperator<String> merger)
+			throws IOException {
+		try {
+			return files.parallelStream().map(file -> process(file, 0, Long.MAX_VALUE, p))
+					.filter(Objects::nonNull).reduce(merger);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// One processor call per range of whole lines of the file, the results merged in the order of the ranges.
+	public Optional<String> processFile(Path file, BufferedReaderProcessor p, BinaryOperator<String> merger)
+			throws IOException {
+		List<long[]> ranges;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (!splittable) {
+				ranges = new ArrayList<>();
+				ranges.add(new long[] { 0, channel.size() });
+			} else {
+				int parallelism = Runtime.getRuntime().availableProcessors();
+				ranges = splitAtNewlines(channel, Math.max(MIN_RANGE, channel.size() / (parallelism * 4L)),
+						Long.MAX_VALUE);
+			}
+		}
+		try {
+			return ranges.parallelStream().map(range -> process(file, range[0], range[1], p))
+					.filter(Objects::nonNull).reduce(merger);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// In UTF-8 and the single byte charsets '\n' is 0x0A and no other character contains that byte.
+	private static boolean encodesNewlineAsOneByte(Charset charset) {
+		if (!charset.canEncode()) {
+			return false;
+		}
+		try {
+			ByteBuffer newline = charset.newEncoder().encode(CharBuffer.wrap("\n"));
+			return newline.remaining() == 1 && newline.get(0) == '\n';
+		} catch (CharacterCodingException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Cuts a file into ranges of about {@code target} bytes, each one ending right after a '\n'
+	 * or at the end of the file. Cutting after '\n' and never after '\r' keeps a "\r\n" line
+	 * terminator inside one range.
+	 */
+	static List<long[]> splitAtNewlines(FileChannel channel, long target, long max) throws IOException {
+		long size = channel.size();
+		List<long[]> ranges = new ArrayList<>();
+		ByteBuffer probe = ByteBuffer.allocate(8192);
+		long start = 0;
+		while (start < size) {
+			long end = Math.min(size, start + target);
+			while (end < size) {
+				probe.clear();
+				int n = channel.read(probe, end);
+				int newline = -1;
+				for (int i = 0; i < n; i++) {
+					if (probe.get(i) == '\n') {
+						newline = i;
+						break;
+					}
+				}
+				if (newline >= 0) {
+					end += newline + 1;
+					break;
+				}
+				end += n;
+				if (end - start >= max) {
+					throw new IOException("Line longer than " + max + " bytes");
+				}
+			}
+			end = Math.min(end, size);
+			ranges.add(new long[] { start, end });
+			start = end;
+		}
+		return ranges;
+	}
+
+	private String process(Path file, long start, long end, BufferedReaderProcessor p) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+				BufferedReader br = new BufferedReader(new ChannelReader(channel, start, end))) {
+			return p.process(br);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	private void release(ByteBuffer buffer) {
+		buffers.offer(buffer);
+	}
+
+	// Decodes the bytes [start, end) of a channel, reading them with positional reads into a pooled buffer.
+	private final class ChannelReader extends Reader {
+		private final FileChannel channel;
+		private final long end;
+		private final CharsetDecoder decoder;
+		private ByteBuffer bytes;
+		private long position;
+		private boolean eof;
+		private boolean flushed;
+
+		ChannelReader(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+			this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+			this.bytes = acquire();
+			bytes.flip();	// empty, in read mode
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (bytes == null) {
+				throw new IOException("Stream closed");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+			while (true) {
+				CoderResult result = decoder.decode(bytes, out, eof);
+				if (result.isError()) {
+					result.throwException();
+				}
+				if (out.position() > off) {
+					return out.position() - off;
+				}
+				if (eof) {
+					if (!flushed) {
+						decoder.flush(out);
+						flushed = true;
+						if (out.position() > off) {
+							return out.position() - off;
+						}
+					}
+					return -1;
+				}
+				fill();
+			}
+		}
+
+		private void fill() throws IOException {
+			bytes.compact();
+			long remaining = end - position;
+			if (remaining < bytes.remaining()) {
+				bytes.limit(bytes.position() + (int) remaining);
+			}
+			int n = remaining > 0 ? channel.read(bytes, position) : -1;
+			if (n < 0) {
+				eof = true;
+			} else {
+				position += n;
+			}
+			bytes.flip();
+		}
+
+		@Override
+		public void close() {
+			if (bytes != null) {
+				release(bytes);
+				bytes = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import com.embracesource.java8.inaction.IntroducingStreams.Dish;
+
+/**
+ * An immutable menu partitioned by Dish.Type and, within a type, by vegetarian.
+ *
+ * The dishes are kept in an array ordered by type, in menu order within a type, so the dishes of
+ * a type are one slice of the array; the vegetarian and the other dishes are kept the same way in
+ * two more arrays. A query on the type only reads the slices of the types its predicate accepts,
+ * testing the predicate once per type instead of once per dish. The groupings that
+ * {@code groupingBy(Dish::getType)}, {@code partitioningBy(Dish::isVegetarian)} and
+ * {@code groupingBy(Dish::getType, counting())} would build are computed once, when the menu is
+ * built, and returned as they are afterwards; they are equal to what the collectors return for
+ * the same menu.
+ */
+public class PartitionedMenu {
+	private static final Dish.Type[] TYPES = Dish.Type.values();
+
+	private final Partition all;
+	private final Partition[] byVegetarian;	// [0] the other dishes, [1] the vegetarian ones
+	private final Map<Dish.Type, List<Dish>> groupingByType;
+	private final Map<Boolean, List<Dish>> partitioningByVegetarian;
+	private final Map<Dish.Type, Long> countingByType;
+
+	private PartitionedMenu(Collection<Dish> menu) {
+		List<Dish> vegetarian = new ArrayList<>();
+		List<Dish> other = new ArrayList<>();
+		for (Dish d : menu) {
+			(d.isVegetarian() ? vegetarian : other).add(d);
+		}
+		all = new Partition(menu);
+		byVegetarian = new Partition[] { new Partition(other), new Partition(vegetarian) };
+		EnumMap<Dish.Type, List<Dish>> byType = new EnumMap<>(Dish.Type.class);
+		EnumMap<Dish.Type, Long> countByType = new EnumMap<>(Dish.Type.class);
+		for (Dish.Type type : TYPES) {
+			List<Dish> dishes = all.get(type);
+			if (!dishes.isEmpty()) {	// groupingBy has no empty groups
+				byType.put(type, dishes);
+				countByType.put(type, (long) dishes.size());
+			}
+		}
+		groupingByType = Collections.unmodifiableMap(byType);
+		countingByType = Collections.unmodifiableMap(countByType);
+		Map<Boolean, List<Dish>> byFlag = new HashMap<>();
+		byFlag.put(false, Collections.unmodifiableList(other));
+		byFlag.put(true, Collections.unmodifiableList(vegetarian));
+		partitioningByVegetarian = Collections.unmodifiableMap(byFlag);
+	}
+
+	public static PartitionedMenu of(Collection<Dish> menu) {
+		return new PartitionedMenu(menu);
+	}
+
+	public int size() {
+		return all.dishes.length;
+	}
+
+	// Every dish, ordered by type.
+	public List<Dish> getAll() {
+		return all.list;
+	}
+
+	public List<Dish> get(Dish.Type type) {
+		return all.get(type);
+	}
+
+	public List<Dish> get(Dish.Type type, boolean vegetarian) {
+		return byVegetarian[vegetarian ? 1 : 0].get(type);
+	}
+
+	// The vegetarian dishes, or the others, in menu order.
+	public List<Dish> getVegetarian(boolean vegetarian) {
+		return partitioningByVegetarian.get(vegetarian);
+	}
+
+	// Like menu.stream().collect(groupingBy(Dish::getType)), without building it.
+	public Map<Dish.Type, List<Dish>> groupingByType() {
+		return groupingByType;
+	}
+
+	// Like menu.stream().collect(partitioningBy(Dish::isVegetarian)), without building it.
+	public Map<Boolean, List<Dish>> partitioningByVegetarian() {
+		return partitioningByVegetarian;
+	}
+
+	// Like menu.stream().collect(groupingBy(Dish::getType, counting())), without building it.
+	public Map<Dish.Type, Long> countingByType() {
+		return countingByType;
+	}
+
+	// The dishes whose type matches, ordered by type, reading only the slices of those types.
+	public Stream<Dish> stream(Predicate<? super Dish.Type> types) {
+		return all.stream(types);
+	}
+
+	public Stream<Dish> stream(Predicate<? super Dish.Type> types, boolean vegetarian) {
+		return byVegetarian[vegetarian ? 1 : 0].stream(types);
+	}
+
+	public Stream<Dish> stream() {
+		return Arrays.stream(all.dishes);
+	}
+
+	public Stream<Dish> parallelStream() {
+		return stream().parallel();
+	}
+
+	/**
+	 * Dishes ordered by type, in menu order within a type.
+	 */
+	private static final class Partition {
+		private final Dish[] dishes;
+		private final int[] bounds;	// the dishes of type t are dishes[bounds[t.ordinal()], bounds[t.ordinal() + 1])
+		private final List<Dish> list;
+		private final List<List<Dish>> byType = new ArrayList<>();
+
+		Partition(Collection<Dish> menu) {
+			bounds = new int[TYPES.length + 1];
+			for (Dish d : menu) {
+				bounds[d.getType().ordinal() + 1]++;
+			}
+			for (int t = 1; t < bounds.length; t++) {
+				bounds[t] += bounds[t - 1];
+			}
+			int[] next = Arrays.copyOf(bounds, TYPES.length);
+			dishes = new Dish[bounds[TYPES.length]];
+			for (Dish d : menu) {
+				dishes[next[d.getType().ordinal()]++] = d;
+			}
+			list = Collections.unmodifiableList(Arrays.asList(dishes));
+			for (Dish.Type type : TYPES) {
+				byType.add(list.subList(bounds[type.ordinal()], bounds[type.ordinal() + 1]));
+			}
+		}
+
+		List<Dish> get(Dish.Type type) {
+			return byType.get(type.ordinal());
+		}
+
+		Stream<Dish> stream(Predicate<? super Dish.Type> types) {
+			Stream<Dish> result = null;
+			int from = 0;
+			int to = 0;
+			for (Dish.Type type : TYPES) {
+				if (!types.test(type)) {
+					continue;
+				}
+				int start = bounds[type.ordinal()];
+				if (start != to) {	// adjacent slices are streamed as one
+					result = concat(result, from, to);
+					from = start;
+				}
+				to = bounds[type.ordinal() + 1];
+			}
+			result = concat(result, from, to);
+			return result != null ? result : Stream.empty();
+		}
+
+		private Stream<Dish> concat(Stream<Dish> result, int from, int to) {
+			if (from == to) {
+				return result;
+			}
+			Stream<Dish> slice = Arrays.stream(dishes, from, to);
+			return result == null ? slice : Stream.concat(result, slice);
+		}
+	}
+}
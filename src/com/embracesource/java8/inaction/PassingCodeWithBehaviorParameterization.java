@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.embracesource.java8.Apple;
+import com.embracesource.java8.ColorDictionary;
 
 public class PassingCodeWithBehaviorParameterization {
 
@@ -84,8 +85,8 @@ public class PassingCodeWithBehaviorParameterization {
 
 		@Override
 		public boolean test(Apple apple) {
-			// TODO Auto-generated method stub
-			return "green".equals(apple.getColor());
+			// colors are interned, so this is an int compare rather than String.equals
+			return apple.getColorCode() == ColorDictionary.GREEN;
 		}
 
 	}
@@ -110,9 +111,36 @@ public class PassingCodeWithBehaviorParameterization {
 		return result;
 	}
 
+	// The same query over an off-heap inventory (see AppleStore): the predicate runs against
+	// each record in place and only the matching apples end up on the heap.
+	public static List<Apple> filterApples(AppleStore inventory, ApplePredicate p) {
+		return inventory.filterApples(p);
+	}
+
+	// The positions of the matching apples instead of a copy of them (see RowBitmap): results of
+	// several predicates combine with and/or/andNot, and asList(inventory) reads the apples back.
+	public static RowBitmap filterApplesRows(List<Apple> inventory, ApplePredicate p) {
+		return RowBitmap.filter(inventory, p::test);
+	}
+
+	// Many queries over the same inventory in one pass (see ApplePredicateBatch): every apple is
+	// read once and tested against all the predicates, instead of once per predicate.
+	public static List<List<Apple>> filterApplesAll(List<Apple> inventory, ApplePredicate... ps) {
+		ApplePredicateBatch batch = new ApplePredicateBatch();
+		for (ApplePredicate p : ps) {
+			batch.register(p);
+		}
+		ApplePredicateBatch.Result matches = batch.evaluate(inventory);
+		List<List<Apple>> result = new ArrayList<List<Apple>>();
+		for (int id = 0; id < ps.length; id++) {
+			result.add(matches.filterApples(id));
+		}
+		return result;
+	}
+
 	public class AppleRedAndHeavyPredicate implements ApplePredicate {
 		public boolean test(Apple apple) {
-			return "red".equals(apple.getColor()) && apple.getWeight() > 150;
+			return apple.getColorCode() == ColorDictionary.RED && apple.getWeight() > 150;
 		}
 	}
 
@@ -130,13 +158,13 @@ public class PassingCodeWithBehaviorParameterization {
 	List<Apple> redApples = filterApples(inventory, new ApplePredicate() {
 		@Override
 		public boolean test(Apple apple) {
-			return "red".equals(apple.getColor());
+			return apple.getColorCode() == ColorDictionary.RED;
 		}
 	});
 	
 	//2.3.3. Sixth attempt: using a lambda expression
 	//The previous code can be rewritten as follows in Java 8 using a lambda expression:
-	List<Apple> result = filterApples(inventory, (Apple apple) -> "red".equals(apple.getColor()));
+	List<Apple> result = filterApples(inventory, (Apple apple) -> apple.getColorCode() == ColorDictionary.RED);
 	
 	//2.3.4. Seventh attempt: abstracting over List type
 	
@@ -153,11 +181,20 @@ public class PassingCodeWithBehaviorParameterization {
 		}
 		return result;
 	}
+
+	// The same filter without the copy: the positions of the matching elements in a RowBitmap,
+	// which combines with other results by and/or/andNot and reads back through asList(list).
+	public static <T> RowBitmap filterRows(List<T> list, Predicate<T> p) {
+		return RowBitmap.filter(list, p::test);
+	}
 	//You can now use the method filter with a List of bananas, oranges, Integers, or Strings! Here’s
 	//an example, using lambda expressions:
-	List<Apple> redApples1 = filter(inventory, (Apple apple) -> "red".equals(apple.getColor()));
+	List<Apple> redApples1 = filter(inventory, (Apple apple) -> apple.getColorCode() == ColorDictionary.RED);
 	private List<Integer> numbers;
 	List<Integer> evenNumbers = filter(numbers , (Integer i) -> i % 2 == 0);
+	//Every Integer above is boxed, and so is every argument of the predicate. For numbers, the
+	//primitive lists filter on plain ints with an IntPredicate:
+	IntList evenInts = IntList.of(1, 2, 3, 4, 5, 6).filter((int i) -> i % 2 == 0);
 	
 	//Conclusion
 	//But you saw that using anonymous classes to represent different behaviors is unsatisfying: it’s
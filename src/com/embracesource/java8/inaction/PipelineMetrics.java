@@ -0,0 +1,306 @@
+package com.embracesource.java8.inaction;
+
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The registry of the metrics collected by {@link InstrumentedStream}: one PipelineMetrics per
+ * pipeline name, with the metrics of every stage of the pipeline in order. Every stage is
+ * also registered as a {@link StageMetricsMXBean}, and {@link #dumpAll()} prints all of them.
+ *
+ * Each thread that runs a stage counts into its own counters, so the threads don't contend
+ * with each other, and the totals are added up when they are read. The counters of threads
+ * that have exited are folded into one total per stage, so a stage doesn't keep them, or the
+ * threads, for the life of the JVM.
+ */
+public final class PipelineMetrics {
+	private static final ConcurrentMap<String, PipelineMetrics> PIPELINES = new ConcurrentHashMap<>();
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocations();
+
+	private final String name;
+	private final ConcurrentMap<Integer, Stage> stages = new ConcurrentHashMap<>();
+
+	private PipelineMetrics(String name) {
+		this.name = name;
+	}
+
+	public static PipelineMetrics get(String pipeline) {
+		return PIPELINES.computeIfAbsent(pipeline, PipelineMetrics::new);
+	}
+
+	public static Collection<PipelineMetrics> all() {
+		return new TreeMap<>(PIPELINES).values();
+	}
+
+	public static String dumpAll() {
+		StringBuilder dump = new StringBuilder();
+		for (PipelineMetrics pipeline : all()) {
+			pipeline.dumpTo(dump);
+		}
+		return dump.toString();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Stage> getStages() {
+		return new ArrayList<>(new TreeMap<>(stages).values());
+	}
+
+	// The stage at the given position of the pipeline; the same stage collects the metrics of every run.
+	Stage stage(int index, String stageName) {
+		return stages.computeIfAbsent(index, i -> register(new Stage(name, i + "-" + stageName)));
+	}
+
+	public String dump() {
+		return dumpTo(new StringBuilder()).toString();
+	}
+
+	private StringBuilder dumpTo(StringBuilder dump) {
+		dump.append("pipeline ").append(name).append('\n');
+		for (Stage stage : getStages()) {
+			dump.append(String.format("  %-12s in=%d out=%d wall=%.3fms cpu=%.3fms alloc=%dB%n", stage.getStage(),
+					stage.getElementsIn(), stage.getElementsOut(), stage.getWallTimeNanos() / 1e6,
+					stage.getCpuTimeNanos() / 1e6, stage.getAllocatedBytes()));
+			for (ThreadCounters counters : stage.threads()) {
+				dump.append(String.format("    %-10s in=%d out=%d wall=%.3fms cpu=%.3fms alloc=%dB%n", counters.thread,
+						counters.in, counters.out, counters.wallTime / 1e6, counters.cpuTime / 1e6, counters.allocated));
+			}
+		}
+		return dump;
+	}
+
+	private static Stage register(Stage stage) {
+		try {
+			ObjectName objectName = new ObjectName("com.embracesource.java8:type=StreamStage,pipeline="
+					+ ObjectName.quote(stage.pipeline) + ",stage=" + ObjectName.quote(stage.stage));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(stage, objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			// registered by another class loader; the dump still has the metrics
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+		return stage;
+	}
+
+	private static com.sun.management.ThreadMXBean allocations() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads;
+			}
+		}
+		return null;
+	}
+
+	public static final class Stage implements StageMetricsMXBean {
+		private final String pipeline;
+		private final String stage;
+		// by thread id, not a ThreadLocal: the common pool may clear the thread locals of its workers between tasks
+		private final ConcurrentMap<Long, ThreadCounters> counters = new ConcurrentHashMap<>();
+		private final Collection<ThreadCounters> live = counters.values();
+		private final ThreadCounters exited = new ThreadCounters("<exited>");	// written under the stage lock
+
+		private Stage(String pipeline, String stage) {
+			this.pipeline = pipeline;
+			this.stage = stage;
+		}
+
+		// The counters of the current thread.
+		ThreadCounters counters() {
+			Thread thread = Thread.currentThread();
+			ThreadCounters threadCounters = counters.get(thread.getId());
+			if (threadCounters == null) {
+				retireExitedThreads();
+				threadCounters = counters.computeIfAbsent(thread.getId(), id -> new ThreadCounters(thread));
+			}
+			return threadCounters;
+		}
+
+		// Folds the counters of the threads that have exited into one total; called when a new thread shows up.
+		private synchronized void retireExitedThreads() {
+			for (Iterator<ThreadCounters> it = live.iterator(); it.hasNext();) {
+				ThreadCounters c = it.next();
+				if (!c.isAlive()) {
+					it.remove();
+					exited.add(c);
+				}
+			}
+		}
+
+		// The counters of the live threads, then the total of the exited ones if there are any.
+		synchronized List<ThreadCounters> threads() {
+			List<ThreadCounters> threads = new ArrayList<>(live);
+			if (exited.in != 0 || exited.out != 0 || exited.wallTime != 0) {
+				threads.add(exited);
+			}
+			return threads;
+		}
+
+		@Override
+		public String getPipeline() {
+			return pipeline;
+		}
+
+		@Override
+		public String getStage() {
+			return stage;
+		}
+
+		@Override
+		public long getElementsIn() {
+			long sum = 0;
+			for (ThreadCounters c : threads()) {
+				sum += c.in;
+			}
+			return sum;
+		}
+
+		@Override
+		public long getElementsOut() {
+			long sum = 0;
+			for (ThreadCounters c : threads()) {
+				sum += c.out;
+			}
+			return sum;
+		}
+
+		@Override
+		public long getWallTimeNanos() {
+			long sum = 0;
+			for (ThreadCounters c : threads()) {
+				sum += c.wallTime;
+			}
+			return sum;
+		}
+
+		@Override
+		public long getCpuTimeNanos() {
+			if (!CPU_TIME) {
+				return -1;
+			}
+			long sum = 0;
+			for (ThreadCounters c : threads()) {
+				sum += c.cpuTime;
+			}
+			return sum;
+		}
+
+		@Override
+		public long getAllocatedBytes() {
+			if (ALLOCATIONS == null) {
+				return -1;
+			}
+			long sum = 0;
+			for (ThreadCounters c : threads()) {
+				sum += c.allocated;
+			}
+			return sum;
+		}
+
+		@Override
+		public Map<String, Long> getElementsInByThread() {
+			Map<String, Long> byThread = new TreeMap<>();
+			for (ThreadCounters c : threads()) {
+				byThread.merge(c.thread, c.in, Long::sum);
+			}
+			return byThread;
+		}
+
+		@Override
+		public Map<String, Long> getWallTimeNanosByThread() {
+			Map<String, Long> byThread = new TreeMap<>();
+			for (ThreadCounters c : threads()) {
+				byThread.merge(c.thread, c.wallTime, Long::sum);
+			}
+			return byThread;
+		}
+	}
+
+	/**
+	 * The counters of one stage on one thread. Only that thread writes them; the fields are
+	 * volatile so that the registry reads up to date values.
+	 */
+	static final class ThreadCounters {
+		final String thread;
+		private final WeakReference<Thread> owner;
+		volatile long in;
+		volatile long out;
+		volatile long wallTime;
+		volatile long cpuTime;
+		volatile long allocated;
+		private long startWall;
+		private long startCpu;
+		private long startAllocated;
+
+		ThreadCounters(Thread thread) {
+			this.thread = thread.getName();
+			this.owner = new WeakReference<>(thread);
+		}
+
+		// A total that no thread counts into.
+		ThreadCounters(String name) {
+			this.thread = name;
+			this.owner = null;
+		}
+
+		boolean isAlive() {
+			Thread t = owner == null ? null : owner.get();
+			return t != null && t.isAlive();
+		}
+
+		void add(ThreadCounters c) {
+			in += c.in;
+			out += c.out;
+			wallTime += c.wallTime;
+			cpuTime += c.cpuTime;
+			allocated += c.allocated;
+		}
+
+		void start() {
+			if (ALLOCATIONS != null) {
+				startAllocated = ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+			if (CPU_TIME) {
+				startCpu = THREADS.getCurrentThreadCpuTime();
+			}
+			startWall = System.nanoTime();
+		}
+
+		void stop(int elementsIn, int elementsOut) {
+			wallTime += System.nanoTime() - startWall;
+			if (CPU_TIME) {
+				cpuTime += THREADS.getCurrentThreadCpuTime() - startCpu;
+			}
+			if (ALLOCATIONS != null) {
+				allocated += ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocated;
+			}
+			in += elementsIn;
+			out += elementsOut;
+		}
+
+		void countIn() {
+			in++;
+		}
+
+		void countOut() {
+			out++;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.embracesource.java8.inaction;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs stream queries on a ForkJoinPool of their own instead of the common pool, so that a big
+ * query can't take all the threads that the other queries need.
+ *
+ * A parallel stream runs its subtasks in the ForkJoinPool of the thread that starts it, so a
+ * query like {@code () -> menu.parallelStream().filter(...).collect(toList())} executed here
+ * uses at most the parallelism of this pool. The number of queries that may be waiting or
+ * running at once is limited, and a query over the limit is rejected right away rather than
+ * queued. A query that misses its deadline is cancelled if it hasn't started yet; one that is
+ * already running can't be interrupted, so it keeps its place against the limit until it ends.
+ */
+public class QueryExecutor implements AutoCloseable {
+	private static final int NOT_STARTED = 0;
+	private static final int STARTED = 1;
+	private static final int CANCELLED = 2;
+
+	private final String name;
+	private final ForkJoinPool pool;
+	private final int queueLimit;
+	private final Semaphore permits;
+	private final AtomicInteger running = new AtomicInteger();
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+
+	// queueLimit is the number of queries that may be waiting or running at the same time.
+	public QueryExecutor(String name, int parallelism, int queueLimit) {
+		if (queueLimit <= 0) {
+			throw new IllegalArgumentException("queueLimit must be positive: " + queueLimit);
+		}
+		this.name = name;
+		this.queueLimit = queueLimit;
+		this.permits = new Semaphore(queueLimit);
+		AtomicInteger threads = new AtomicInteger();
+		this.pool = new ForkJoinPool(parallelism, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName(name + "-worker-" + threads.incrementAndGet());
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * Runs the query on this executor's pool and waits for its result.
+	 *
+	 * @throws RejectedExecutionException if queueLimit queries are already waiting or running
+	 * @throws TimeoutException if the query doesn't finish before the timeout
+	 */
+	public <T> T execute(Supplier<T> query, long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
+		if (!permits.tryAcquire()) {
+			rejected.increment();
+			throw new RejectedExecutionException("Query executor " + name + " already has " + queueLimit + " queries");
+		}
+		submitted.increment();
+		AtomicInteger state = new AtomicInteger(NOT_STARTED);
+		ForkJoinTask<T> task;
+		try {
+			task = pool.submit(() -> {
+				if (!state.compareAndSet(NOT_STARTED, STARTED)) {
+					return null;
+				}
+				running.incrementAndGet();
+				try {
+					return query.get();
+				} finally {
+					running.decrementAndGet();
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			rejected.increment();
+			throw e;
+		}
+		try {
+			T result = task.get(timeout, unit);
+			completed.increment();
+			return result;
+		} catch (TimeoutException | InterruptedException e) {
+			task.cancel(false);
+			if (state.compareAndSet(NOT_STARTED, CANCELLED)) {
+				permits.release();
+			}
+			if (e instanceof TimeoutException) {
+				timedOut.increment();
+			}
+			throw e;
+		} catch (ExecutionException e) {
+			failed.increment();
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (CancellationException e) {
+			failed.increment();
+			throw e;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Metrics getMetrics() {
+		return new Metrics(this);
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return getMetrics().toString();
+	}
+
+	/**
+	 * A snapshot of how busy an executor is.
+	 */
+	public static final class Metrics {
+		private final String name;
+		private final int parallelism;
+		private final int poolSize;
+		private final int activeThreads;
+		private final int runningQueries;
+		private final int waitingQueries;
+		private final int queueLimit;
+		private final long submitted;
+		private final long completed;
+		private final long failed;
+		private final long rejected;
+		private final long timedOut;
+		private final long steals;
+
+		private Metrics(QueryExecutor executor) {
+			name = executor.name;
+			parallelism = executor.pool.getParallelism();
+			poolSize = executor.pool.getPoolSize();
+			activeThreads = executor.pool.getActiveThreadCount();
+			queueLimit = executor.queueLimit;
+			int inFlight = queueLimit - executor.permits.availablePermits();
+			runningQueries = Math.min(executor.running.get(), inFlight);
+			waitingQueries = inFlight - runningQueries;
+			submitted = executor.submitted.sum();
+			completed = executor.completed.sum();
+			failed = executor.failed.sum();
+			rejected = executor.rejected.sum();
+			timedOut = executor.timedOut.sum();
+			steals = executor.pool.getStealCount();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		public int getPoolSize() {
+			return poolSize;
+		}
+
+		public int getActiveThreads() {
+			return activeThreads;
+		}
+
+		public int getRunningQueries() {
+			return runningQueries;
+		}
+
+		public int getWaitingQueries() {
+			return waitingQueries;
+		}
+
+		public int getQueueLimit() {
+			return queueLimit;
+		}
+
+		// The share of the queue limit in use, from 0 to 1; at 1 new queries are rejected.
+		public double getSaturation() {
+			return (double) (runningQueries + waitingQueries) / queueLimit;
+		}
+
+		// The share of the pool's threads that are busy, from 0 to 1.
+		public double getThreadUtilization() {
+			return parallelism == 0 ? 0.0 : Math.min(1.0, (double) activeThreads / parallelism);
+		}
+
+		public long getSubmitted() {
+			return submitted;
+		}
+
+		public long getCompleted() {
+			return completed;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getTimedOut() {
+			return timedOut;
+		}
+
+		public long getSteals() {
+			return steals;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s{parallelism=%d, threads=%d, active=%d, running=%d, waiting=%d, limit=%d, "
+					+ "saturation=%.2f, submitted=%d, completed=%d, failed=%d, rejected=%d, timedOut=%d, steals=%d}",
+					name, parallelism, poolSize, activeThreads, runningQueries, waitingQueries, queueLimit,
+					getSaturation(), submitted, completed, failed, rejected, timedOut, steals);
+		}
+	}
+}
@@ -0,0 +1,620 @@
+package com.embracesource.java8.inaction;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, compressed set of row positions in a list, the result of a filter that doesn't
+ * copy the matching elements.
+ *
+ * As in a Roaring bitmap, the rows are split by their high 16 bits into chunks of 65536, and
+ * each chunk that has rows keeps them either as a sorted char[] of their low 16 bits, while it has
+ * at most {@value #ARRAY_LIMIT} of them, or as a 65536 bit long[] beyond that, so a sparse filter
+ * result takes 2 bytes per row and a dense one 1 bit per row. {@link #and(RowBitmap)},
+ * {@link #or(RowBitmap)} and {@link #andNot(RowBitmap)} combine two results chunk by chunk, a word
+ * or a sorted merge at a time, and {@link #asList(List)} shows the rows of a list as a list without
+ * copying them.
+ */
+public final class RowBitmap {
+	static final int ARRAY_LIMIT = 4096;
+	private static final int WORDS = 1 << 10;	// 65536 bits
+
+	private static final RowBitmap EMPTY = new RowBitmap(new char[0], new Container[0], 0);
+
+	private final char[] keys;				// the high 16 bits of the rows of each chunk, ascending
+	private final Container[] containers;
+	private final int[] starts;				// the number of rows in the chunks before each chunk
+	private final int cardinality;
+
+	private RowBitmap(char[] keys, Container[] containers, int size) {
+		this.keys = Arrays.copyOf(keys, size);
+		this.containers = Arrays.copyOf(containers, size);
+		this.starts = new int[size];
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			starts[i] = cardinality;
+			cardinality += containers[i].cardinality();
+		}
+		this.cardinality = cardinality;
+	}
+
+	public static RowBitmap empty() {
+		return EMPTY;
+	}
+
+	public static RowBitmap of(int... rows) {
+		int[] sorted = rows.clone();
+		Arrays.sort(sorted);
+		Builder builder = new Builder();
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				builder.add(sorted[i]);
+			}
+		}
+		return builder.build();
+	}
+
+	// The rows whose bit is set in a bitmap of one bit per row, bit i % 64 of words[i / 64] for row i.
+	public static RowBitmap fromWords(long[] words) {
+		int chunks = (words.length + WORDS - 1) / WORDS;
+		char[] keys = new char[chunks];
+		Container[] containers = new Container[chunks];
+		int size = 0;
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			long[] block = Arrays.copyOfRange(words, chunk * WORDS, (chunk + 1) * WORDS);
+			Container container = Container.of(block, BitmapContainer.count(block));
+			if (container != null) {
+				keys[size] = (char) chunk;
+				containers[size++] = container;
+			}
+		}
+		return new RowBitmap(keys, containers, size);
+	}
+
+	// The positions of the elements of the list that match the predicate.
+	public static <T> RowBitmap filter(List<T> list, Predicate<? super T> p) {
+		Builder builder = new Builder();
+		int row = 0;
+		for (T e : list) {
+			if (p.test(e)) {
+				builder.add(row);
+			}
+			row++;
+		}
+		return builder.build();
+	}
+
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	public boolean contains(int row) {
+		if (row < 0) {
+			return false;
+		}
+		int i = Arrays.binarySearch(keys, (char) (row >>> 16));
+		return i >= 0 && containers[i].contains((char) row);
+	}
+
+	// The index-th smallest row.
+	public int select(int index) {
+		if (index < 0 || index >= cardinality) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + cardinality);
+		}
+		int i = Arrays.binarySearch(starts, index);	// chunks are never empty, so starts is strictly ascending
+		if (i < 0) {
+			i = -i - 2;
+		}
+		return keys[i] << 16 | containers[i].select(index - starts[i]);
+	}
+
+	public RowBitmap and(RowBitmap other) {
+		char[] keys = new char[Math.min(this.keys.length, other.keys.length)];
+		Container[] containers = new Container[keys.length];
+		int size = 0;
+		for (int i = 0, j = 0; i < this.keys.length && j < other.keys.length;) {
+			if (this.keys[i] < other.keys[j]) {
+				i++;
+			} else if (this.keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Container c = this.containers[i].and(other.containers[j]);
+				if (c != null) {
+					keys[size] = this.keys[i];
+					containers[size++] = c;
+				}
+				i++;
+				j++;
+			}
+		}
+		return new RowBitmap(keys, containers, size);
+	}
+
+	public RowBitmap or(RowBitmap other) {
+		char[] keys = new char[this.keys.length + other.keys.length];
+		Container[] containers = new Container[keys.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < this.keys.length || j < other.keys.length) {
+			if (j == other.keys.length || i < this.keys.length && this.keys[i] < other.keys[j]) {
+				keys[size] = this.keys[i];
+				containers[size++] = this.containers[i++];
+			} else if (i == this.keys.length || this.keys[i] > other.keys[j]) {
+				keys[size] = other.keys[j];
+				containers[size++] = other.containers[j++];
+			} else {
+				keys[size] = this.keys[i];
+				containers[size++] = this.containers[i++].or(other.containers[j++]);
+			}
+		}
+		return new RowBitmap(keys, containers, size);
+	}
+
+	// The rows of this bitmap that are not in the other one.
+	public RowBitmap andNot(RowBitmap other) {
+		char[] keys = new char[this.keys.length];
+		Container[] containers = new Container[keys.length];
+		int size = 0;
+		for (int i = 0, j = 0; i < this.keys.length; i++) {
+			while (j < other.keys.length && other.keys[j] < this.keys[i]) {
+				j++;
+			}
+			Container c = j < other.keys.length && other.keys[j] == this.keys[i]
+					? this.containers[i].andNot(other.containers[j])
+					: this.containers[i];
+			if (c != null) {
+				keys[size] = this.keys[i];
+				containers[size++] = c;
+			}
+		}
+		return new RowBitmap(keys, containers, size);
+	}
+
+	public void forEach(IntConsumer action) {
+		for (int i = 0; i < keys.length; i++) {
+			containers[i].forEach(keys[i] << 16, action);
+		}
+	}
+
+	// The rows in ascending order.
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int chunk = -1;
+			private PrimitiveIterator.OfInt rows = IntStream.empty().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!rows.hasNext()) {
+					if (++chunk == keys.length) {
+						chunk--;
+						return false;
+					}
+					rows = containers[chunk].iterator(keys[chunk] << 16);
+				}
+				return true;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return rows.nextInt();
+			}
+		};
+	}
+
+	public IntStream stream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), cardinality,
+				Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL
+						| Spliterator.IMMUTABLE), false);
+	}
+
+	public int[] toArray() {
+		int[] rows = new int[cardinality];
+		int[] next = new int[1];
+		forEach(row -> rows[next[0]++] = row);
+		return rows;
+	}
+
+	/**
+	 * The elements of the source list at these rows, read from the source as the view is read.
+	 * The source should be a RandomAccess list that keeps its rows while the view is used.
+	 */
+	public <T> List<T> asList(List<T> source) {
+		return new AbstractList<T>() {
+			@Override
+			public T get(int index) {
+				return source.get(select(index));
+			}
+
+			@Override
+			public int size() {
+				return cardinality;
+			}
+
+			@Override
+			public Iterator<T> iterator() {
+				PrimitiveIterator.OfInt rows = RowBitmap.this.iterator();
+				return new Iterator<T>() {
+					@Override
+					public boolean hasNext() {
+						return rows.hasNext();
+					}
+
+					@Override
+					public T next() {
+						return source.get(rows.nextInt());
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		forEach(row -> sb.append(sb.length() > 1 ? ", " : "").append(row));
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Builds a bitmap from rows added in ascending order.
+	 */
+	public static final class Builder {
+		private char[] keys = new char[4];
+		private Container[] containers = new Container[4];
+		private int size;
+		private int key = -1;
+		private long[] words = new long[WORDS];
+		private int count;
+		private int last = -1;
+
+		public Builder add(int row) {
+			if (row <= last) {
+				throw new IllegalArgumentException("Rows must be added in ascending order: " + row + " after " + last);
+			}
+			last = row;
+			if (row >>> 16 != key) {
+				flush();
+				key = row >>> 16;
+			}
+			words[(row & 0xFFFF) >>> 6] |= 1L << row;
+			count++;
+			return this;
+		}
+
+		private void flush() {
+			if (count == 0) {
+				return;
+			}
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				containers = Arrays.copyOf(containers, size * 2);
+			}
+			keys[size] = (char) key;
+			Container container = Container.of(words, count);
+			containers[size++] = container;
+			if (container instanceof BitmapContainer) {
+				words = new long[WORDS];
+			} else {
+				Arrays.fill(words, 0);
+			}
+			count = 0;
+		}
+
+		public RowBitmap build() {
+			flush();
+			return new RowBitmap(keys, containers, size);
+		}
+	}
+
+	/**
+	 * The low 16 bits of the rows of one chunk.
+	 */
+	private abstract static class Container {
+		// The container for the bits of a chunk, which may be taken over, or null if there are none.
+		static Container of(long[] words, int cardinality) {
+			if (cardinality == 0) {
+				return null;
+			}
+			if (cardinality > ARRAY_LIMIT) {
+				return new BitmapContainer(words, cardinality);
+			}
+			char[] values = new char[cardinality];
+			int n = 0;
+			for (int w = 0; w < words.length; w++) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(bits));
+				}
+			}
+			return new ArrayContainer(values);
+		}
+
+		abstract int cardinality();
+
+		abstract boolean contains(char value);
+
+		abstract int select(int index);
+
+		abstract Container and(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container andNot(Container other);
+
+		abstract void forEach(int high, IntConsumer action);
+
+		abstract PrimitiveIterator.OfInt iterator(int high);
+	}
+
+	private static final class ArrayContainer extends Container {
+		private final char[] values;	// ascending
+
+		ArrayContainer(char[] values) {
+			this.values = values;
+		}
+
+		@Override
+		int cardinality() {
+			return values.length;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, value) >= 0;
+		}
+
+		@Override
+		int select(int index) {
+			return values[index];
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] result = new char[values.length];
+			int n = 0;
+			if (other instanceof BitmapContainer) {
+				for (char v : values) {
+					if (other.contains(v)) {
+						result[n++] = v;
+					}
+				}
+			} else {
+				char[] o = ((ArrayContainer) other).values;
+				for (int i = 0, j = 0; i < values.length && j < o.length;) {
+					if (values[i] < o[j]) {
+						i++;
+					} else if (values[i] > o[j]) {
+						j++;
+					} else {
+						result[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return n == 0 ? null : new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+			char[] o = ((ArrayContainer) other).values;
+			if (values.length + o.length > ARRAY_LIMIT) {
+				long[] words = new long[WORDS];
+				set(words, values);
+				set(words, o);
+				return Container.of(words, BitmapContainer.count(words));
+			}
+			char[] result = new char[values.length + o.length];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < values.length && j < o.length) {
+				if (values[i] < o[j]) {
+					result[n++] = values[i++];
+				} else if (values[i] > o[j]) {
+					result[n++] = o[j++];
+				} else {
+					result[n++] = values[i++];
+					j++;
+				}
+			}
+			while (i < values.length) {
+				result[n++] = values[i++];
+			}
+			while (j < o.length) {
+				result[n++] = o[j++];
+			}
+			return new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		@Override
+		Container andNot(Container other) {
+			char[] result = new char[values.length];
+			int n = 0;
+			for (char v : values) {
+				if (!other.contains(v)) {
+					result[n++] = v;
+				}
+			}
+			return n == 0 ? null : new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		@Override
+		void forEach(int high, IntConsumer action) {
+			for (char v : values) {
+				action.accept(high | v);
+			}
+		}
+
+		@Override
+		PrimitiveIterator.OfInt iterator(int high) {
+			return new PrimitiveIterator.OfInt() {
+				private int next;
+
+				@Override
+				public boolean hasNext() {
+					return next < values.length;
+				}
+
+				@Override
+				public int nextInt() {
+					if (next == values.length) {
+						throw new NoSuchElementException();
+					}
+					return high | values[next++];
+				}
+			};
+		}
+
+		static void set(long[] words, char[] values) {
+			for (char v : values) {
+				words[v >>> 6] |= 1L << v;
+			}
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		private final long[] words;	// WORDS long
+		private final int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		static int count(long[] words) {
+			int count = 0;
+			for (long word : words) {
+				count += Long.bitCount(word);
+			}
+			return count;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		int select(int index) {
+			for (int w = 0;; w++) {
+				int bits = Long.bitCount(words[w]);
+				if (index < bits) {
+					long word = words[w];
+					for (; index > 0; index--) {
+						word &= word - 1;
+					}
+					return w << 6 | Long.numberOfTrailingZeros(word);
+				}
+				index -= bits;
+			}
+		}
+
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			long[] o = ((BitmapContainer) other).words;
+			long[] result = new long[WORDS];
+			for (int w = 0; w < WORDS; w++) {
+				result[w] = words[w] & o[w];
+			}
+			return Container.of(result, count(result));
+		}
+
+		@Override
+		Container or(Container other) {
+			long[] result = words.clone();
+			if (other instanceof ArrayContainer) {
+				ArrayContainer.set(result, ((ArrayContainer) other).values);
+			} else {
+				long[] o = ((BitmapContainer) other).words;
+				for (int w = 0; w < WORDS; w++) {
+					result[w] |= o[w];
+				}
+			}
+			return new BitmapContainer(result, count(result));
+		}
+
+		@Override
+		Container andNot(Container other) {
+			long[] result = words.clone();
+			if (other instanceof ArrayContainer) {
+				for (char v : ((ArrayContainer) other).values) {
+					result[v >>> 6] &= ~(1L << v);
+				}
+			} else {
+				long[] o = ((BitmapContainer) other).words;
+				for (int w = 0; w < WORDS; w++) {
+					result[w] &= ~o[w];
+				}
+			}
+			return Container.of(result, count(result));
+		}
+
+		@Override
+		void forEach(int high, IntConsumer action) {
+			for (int w = 0; w < WORDS; w++) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					action.accept(high | w << 6 | Long.numberOfTrailingZeros(bits));
+				}
+			}
+		}
+
+		@Override
+		PrimitiveIterator.OfInt iterator(int high) {
+			return new PrimitiveIterator.OfInt() {
+				private int w = -1;
+				private long bits;
+
+				@Override
+				public boolean hasNext() {
+					while (bits == 0) {
+						if (++w == WORDS) {
+							w--;
+							return false;
+						}
+						bits = words[w];
+					}
+					return true;
+				}
+
+				@Override
+				public int nextInt() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					int row = high | w << 6 | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					return row;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.embracesource.java8.inaction;
+
+import java.util.Map;
+
+/**
+ * The metrics of one stage of an instrumented stream pipeline, as exported through JMX
+ * under {@code com.embracesource.java8:type=StreamStage,pipeline=...,stage=...}.
+ */
+public interface StageMetricsMXBean {
+	String getPipeline();
+
+	String getStage();
+
+	long getElementsIn();
+
+	long getElementsOut();
+
+	long getWallTimeNanos();
+
+	// -1 when the JVM can't measure the CPU time of a thread
+	long getCpuTimeNanos();
+
+	// -1 when the JVM can't measure the memory allocated by a thread
+	long getAllocatedBytes();
+
+	// The elements in of every thread that ran the stage, by thread name.
+	Map<String, Long> getElementsInByThread();
+
+	Map<String, Long> getWallTimeNanosByThread();
+}
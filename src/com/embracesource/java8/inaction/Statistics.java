@@ -0,0 +1,126 @@
+package com.embracesource.java8.inaction;
+
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Count, sum, min, max, average and variance of an int or long field, computed in a single
+ * pass over the stream, like {@link java.util.IntSummaryStatistics} plus the variance.
+ *
+ * The sum is a long that throws an {@link ArithmeticException} instead of overflowing
+ * silently. The mean and variance are updated with Welford's algorithm, and the partial
+ * results of a parallel stream are combined with Chan's formula, so the variance stays
+ * accurate without a second pass over the data.
+ */
+public final class Statistics implements IntConsumer, LongConsumer {
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+	private double mean;
+	private double m2;	// sum of the squared differences from the mean
+
+	public static <T> Collector<T, ?, Statistics> ofInt(ToIntFunction<? super T> mapper) {
+		return Collector.of(Statistics::new, (s, t) -> s.accept(mapper.applyAsInt(t)), Statistics::combine,
+				Collector.Characteristics.IDENTITY_FINISH, Collector.Characteristics.UNORDERED);
+	}
+
+	public static <T> Collector<T, ?, Statistics> ofLong(ToLongFunction<? super T> mapper) {
+		return Collector.of(Statistics::new, (s, t) -> s.accept(mapper.applyAsLong(t)), Statistics::combine,
+				Collector.Characteristics.IDENTITY_FINISH, Collector.Characteristics.UNORDERED);
+	}
+
+	public static Statistics of(IntStream values) {
+		return values.collect(Statistics::new, Statistics::accept, Statistics::combine);
+	}
+
+	public static Statistics of(LongStream values) {
+		return values.collect(Statistics::new, Statistics::accept, Statistics::combine);
+	}
+
+	@Override
+	public void accept(int value) {
+		accept((long) value);
+	}
+
+	@Override
+	public void accept(long value) {
+		sum = Math.addExact(sum, value);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	public Statistics combine(Statistics other) {
+		if (other.count == 0) {
+			return this;
+		}
+		if (count == 0) {
+			count = other.count;
+			sum = other.sum;
+			min = other.min;
+			max = other.max;
+			mean = other.mean;
+			m2 = other.m2;
+			return this;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		sum = Math.addExact(sum, other.sum);
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		count = n;
+		return this;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	// Long.MAX_VALUE when there are no values, like IntSummaryStatistics.
+	public long getMin() {
+		return min;
+	}
+
+	// Long.MIN_VALUE when there are no values.
+	public long getMax() {
+		return max;
+	}
+
+	public double getAverage() {
+		return count > 0 ? (double) sum / count : 0.0;
+	}
+
+	// The population variance; 0 when there are no values.
+	public double getVariance() {
+		return count > 0 ? m2 / count : 0.0;
+	}
+
+	public double getSampleVariance() {
+		return count > 1 ? m2 / (count - 1) : 0.0;
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{count=%d, sum=%d, min=%d, average=%f, max=%d, variance=%f}",
+				getClass().getSimpleName(), count, sum, min, getAverage(), max, getVariance());
+	}
+}
@@ -0,0 +1,109 @@
+package com.embracesource.java8.inaction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Collectors that keep only the first elements of a stream in a given order, the same elements as
+ * {@code stream.sorted(comparator).skip(offset).limit(limit).collect(toList())}, without sorting or
+ * buffering the whole stream.
+ *
+ * Every thread keeps a bounded heap of the best {@code offset + limit} elements seen so far, and
+ * the heaps are merged when a parallel stream combines its results: O(n log k) time and O(k)
+ * memory. Equal elements keep their encounter order, as they would with a stable sort.
+ */
+public final class TopK {
+
+	private TopK() {
+	}
+
+	// The first limit elements in the order of the comparator.
+	public static <T> Collector<T, ?, List<T>> first(int limit, Comparator<? super T> comparator) {
+		return first(0, limit, comparator);
+	}
+
+	// The limit elements that follow the first offset elements in the order of the comparator.
+	public static <T> Collector<T, ?, List<T>> first(int offset, int limit, Comparator<? super T> comparator) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("offset and limit must not be negative: " + offset + ", " + limit);
+		}
+		int k = Math.addExact(offset, limit);
+		return Collector.of(
+				() -> new Heap<T>(k, comparator),
+				Heap::offer,
+				Heap::merge,
+				heap -> heap.toList(offset));
+	}
+
+	// The limit greatest elements, greatest first.
+	public static <T> Collector<T, ?, List<T>> greatest(int limit, Comparator<? super T> comparator) {
+		return first(0, limit, comparator.reversed());
+	}
+
+	public static <T> Collector<T, ?, List<T>> greatest(int offset, int limit, Comparator<? super T> comparator) {
+		return first(offset, limit, comparator.reversed());
+	}
+
+	private static final class Entry<T> {
+		final T value;
+		long seq;
+
+		Entry(T value, long seq) {
+			this.value = value;
+			this.seq = seq;
+		}
+	}
+
+	private static final class Heap<T> {
+		private final int k;
+		private final Comparator<Entry<T>> order;
+		// the worst kept element is at the head
+		private final PriorityQueue<Entry<T>> queue;
+		private long count;
+
+		Heap(int k, Comparator<? super T> comparator) {
+			this.k = k;
+			this.order = Comparator.<Entry<T>, T>comparing(e -> e.value, comparator).thenComparingLong(e -> e.seq);
+			this.queue = new PriorityQueue<>(Math.max(1, Math.min(k, 1 << 10)), order.reversed());
+		}
+
+		void offer(T value) {
+			add(new Entry<>(value, count++));
+		}
+
+		private void add(Entry<T> entry) {
+			if (queue.size() < k) {
+				queue.add(entry);
+			} else if (k > 0 && order.compare(entry, queue.peek()) < 0) {
+				queue.poll();
+				queue.add(entry);
+			}
+		}
+
+		// Called with the heaps in encounter order: the right heap's elements come after all of ours.
+		Heap<T> merge(Heap<T> right) {
+			for (Entry<T> entry : right.queue) {
+				entry.seq += count;
+				add(entry);
+			}
+			count += right.count;
+			return this;
+		}
+
+		List<T> toList(int offset) {
+			if (queue.size() <= offset) {
+				return new ArrayList<>();
+			}
+			List<Entry<T>> entries = new ArrayList<>(queue);
+			entries.sort(order);
+			List<T> result = new ArrayList<>(entries.size() - offset);
+			for (int i = offset; i < entries.size(); i++) {
+				result.add(entries.get(i).value);
+			}
+			return result;
+		}
+	}
+}
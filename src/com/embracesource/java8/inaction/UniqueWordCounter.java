@@ -0,0 +1,236 @@
+package com.embracesource.java8.inaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Counts the distinct words of a file the way
+ * {@code Files.lines(path).flatMap(line -> Arrays.stream(line.split(" "))).distinct().count()} does,
+ * without decoding the file into Strings.
+ *
+ * The file is memory-mapped and cut into ranges that end on a '\n', every range is
+ * scanned by its own task and its words are hashed straight from the mapped bytes
+ * into a per-task set, and the sets are merged at the end. Two words are equal
+ * exactly when their bytes are equal for UTF-8, ISO-8859-1 and US-ASCII, so other
+ * charsets fall back to the stream version.
+ */
+public class UniqueWordCounter {
+	private static final int MIN_RANGE = 1 << 20;
+	private static final int MAX_RANGE = 1 << 30;
+
+	public static long count(Path file) throws IOException {
+		return count(file, Charset.defaultCharset());
+	}
+
+	public static long count(Path file, Charset charset) throws IOException {
+		if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.ISO_8859_1)
+				&& !charset.equals(StandardCharsets.US_ASCII)) {
+			try (Stream<String> lines = Files.lines(file, charset)) {
+				return lines.flatMap(line -> Arrays.stream(line.split(" "))).distinct().count();
+			}
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			long target = Math.min(MAX_RANGE / 2, Math.max(MIN_RANGE, channel.size() / (parallelism * 4L)));
+			List<long[]> ranges = ParallelFileProcessor.splitAtNewlines(channel, target, MAX_RANGE);
+			try {
+				WordSet words = ranges.parallelStream()
+						.map(range -> scan(channel, range[0], range[1]))
+						.reduce(WordSet::merge)
+						.orElseGet(WordSet::new);
+				return words.size();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static WordSet scan(FileChannel channel, long start, long end) {
+		MappedByteBuffer bytes;
+		try {
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		WordSet words = new WordSet();
+		int limit = bytes.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = lineStart;
+			while (lineEnd < limit && bytes.get(lineEnd) != '\n' && bytes.get(lineEnd) != '\r') {
+				lineEnd++;
+			}
+			scanLine(bytes, lineStart, lineEnd, words);
+			if (lineEnd < limit && bytes.get(lineEnd) == '\r' && lineEnd + 1 < limit && bytes.get(lineEnd + 1) == '\n') {
+				lineEnd++;
+			}
+			lineStart = lineEnd + 1;
+		}
+		return words;
+	}
+
+	// line.split(" ") keeps an empty word for an empty line, and for an empty field that is
+	// followed by a non-empty word; trailing empty fields are dropped.
+	private static void scanLine(ByteBuffer bytes, int start, int end, WordSet words) {
+		if (start == end) {
+			words.addEmpty();
+			return;
+		}
+		boolean pendingEmpty = false;
+		int wordStart = start;
+		int hash = 0;
+		for (int i = start; i <= end; i++) {
+			if (i == end || bytes.get(i) == ' ') {
+				if (i == wordStart) {
+					pendingEmpty = true;
+				} else {
+					words.add(bytes, wordStart, i - wordStart, hash);
+					if (pendingEmpty) {
+						words.addEmpty();
+						pendingEmpty = false;
+					}
+				}
+				wordStart = i + 1;
+				hash = 0;
+			} else {
+				hash = 31 * hash + bytes.get(i);
+			}
+		}
+	}
+
+	/**
+	 * An open addressing hash set of byte strings. The bytes of every new word are copied
+	 * once into a shared arena; no object is allocated per word.
+	 */
+	static final class WordSet {
+		private byte[] arena = new byte[1 << 12];
+		private int arenaSize;
+		private int[] offsets = new int[64];
+		private int[] lengths = new int[64];
+		private int[] hashes = new int[64];
+		private int size;
+		private int[] table = new int[128];	// entry index + 1, 0 when free
+		private boolean empty;
+
+		long size() {
+			return size + (empty ? 1 : 0);
+		}
+
+		void addEmpty() {
+			empty = true;
+		}
+
+		void add(ByteBuffer bytes, int offset, int length, int hash) {
+			int mask = table.length - 1;
+			for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+				int entry = table[slot] - 1;
+				if (entry < 0) {
+					insert(slot, hash, length);
+					for (int i = 0; i < length; i++) {
+						arena[arenaSize + i] = bytes.get(offset + i);
+					}
+					arenaSize += length;
+					return;
+				}
+				if (hashes[entry] == hash && lengths[entry] == length && equal(entry, bytes, offset, length)) {
+					return;
+				}
+			}
+		}
+
+		private void add(byte[] source, int offset, int length, int hash) {
+			int mask = table.length - 1;
+			for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+				int entry = table[slot] - 1;
+				if (entry < 0) {
+					insert(slot, hash, length);
+					System.arraycopy(source, offset, arena, arenaSize, length);
+					arenaSize += length;
+					return;
+				}
+				if (hashes[entry] == hash && lengths[entry] == length && equal(entry, source, offset, length)) {
+					return;
+				}
+			}
+		}
+
+		// Merges the smaller set into the bigger one.
+		WordSet merge(WordSet other) {
+			WordSet into = size >= other.size ? this : other;
+			WordSet from = into == this ? other : this;
+			for (int i = 0; i < from.size; i++) {
+				into.add(from.arena, from.offsets[i], from.lengths[i], from.hashes[i]);
+			}
+			into.empty |= from.empty;
+			return into;
+		}
+
+		private void insert(int slot, int hash, int length) {
+			if (size == offsets.length) {
+				int capacity = size * 2;
+				offsets = Arrays.copyOf(offsets, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				hashes = Arrays.copyOf(hashes, capacity);
+			}
+			if (arenaSize + length > arena.length) {
+				arena = Arrays.copyOf(arena, Math.max(arenaSize + length, arena.length * 2));
+			}
+			offsets[size] = arenaSize;
+			lengths[size] = length;
+			hashes[size] = hash;
+			table[slot] = ++size;
+			if (size * 2 > table.length) {
+				rehash();
+			}
+		}
+
+		private void rehash() {
+			int[] grown = new int[table.length * 2];
+			int mask = grown.length - 1;
+			for (int entry = 0; entry < size; entry++) {
+				int slot = mix(hashes[entry]) & mask;
+				while (grown[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				grown[slot] = entry + 1;
+			}
+			table = grown;
+		}
+
+		private boolean equal(int entry, ByteBuffer bytes, int offset, int length) {
+			int base = offsets[entry];
+			for (int i = 0; i < length; i++) {
+				if (arena[base + i] != bytes.get(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean equal(int entry, byte[] source, int offset, int length) {
+			int base = offsets[entry];
+			for (int i = 0; i < length; i++) {
+				if (arena[base + i] != source[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int mix(int hash) {
+			int h = hash * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.OptionalInt;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
 
 import java.io.IOException;
@@ -39,6 +40,23 @@ public class WorkingWithStreams {
 		List<Dish> vegetarianMenu = menu.stream().filter(Dish::isVegetarian).collect(toList());
 		return vegetarianMenu;
 	}
+
+	//When the menu is partitioned by type, a filter on the type skips the other types' dishes instead
+	//of testing every dish, and the vegetarian dishes are already a list of their own.
+	public List<Dish> getNonMeatMenu(PartitionedMenu menu) {
+		List<Dish> nonMeatMenu = menu.stream(t -> t != Dish.Type.MEAT).collect(toList());
+		return nonMeatMenu;
+	}
+
+	public List<Dish> getVegetarianMenu(PartitionedMenu menu) {
+		return menu.getVegetarian(true);
+	}
+
+	//Or keep only the positions of the vegetarian dishes, and read them from the menu when needed:
+	public List<Dish> getVegetarianMenuView(List<Dish> menu) {
+		RowBitmap vegetarianRows = RowBitmap.filter(menu, Dish::isVegetarian);
+		return vegetarianRows.asList(menu);
+	}
 	
 	//5.1.2. Filtering unique elements
 	//Streams also support a method called distinct that returns a stream with unique elements
@@ -67,6 +85,18 @@ public class WorkingWithStreams {
 		List<Dish> vegetarianMenu = menu.stream().filter(d -> d.getCalories() > 300).skip(2).collect(toList());
 		return vegetarianMenu;
 	}
+
+	//To get the three dishes with the most calories, sorted(...).limit(3) has to sort the whole menu.
+	//TopK keeps only a bounded heap of three dishes per thread, and takes an offset the way skip does.
+	public List<Dish> getTop3HighCaloryMenu(List<Dish> menu) {
+		List<Dish> highCaloryMenu = menu.parallelStream().collect(TopK.greatest(3, comparing(Dish::getCalories)));
+		return highCaloryMenu;
+	}
+
+	public List<Dish> skipTop2HighCaloryMenu(List<Dish> menu, int limit) {
+		List<Dish> highCaloryMenu = menu.parallelStream().collect(TopK.greatest(2, limit, comparing(Dish::getCalories)));
+		return highCaloryMenu;
+	}
 	
 	//5.2. Mapping
 	
@@ -122,6 +152,13 @@ public class WorkingWithStreams {
 		List<String> collect = words.stream().map(w -> w.split("")).flatMap(Arrays::stream).distinct().collect(toList());
 		return collect;
 	}
+
+	//The same letters in the same order, collected straight from the words into a bitset of chars,
+	//without a String per letter:
+	public List<String> getDistinctLetter4(List<String> words) {
+		List<String> collect = words.parallelStream().collect(DistinctChars.toList());
+		return collect;
+	}
 	
 	//5.3. Finding and matching
 	//Another common data processing idiom is finding whether some elements in a set of data match
@@ -282,6 +319,13 @@ public class WorkingWithStreams {
 		OptionalInt max = menu.stream().mapToInt(Dish::getCalories).max();
 		return max.orElse(1);
 	}
+
+	//When you need several of these numbers, Statistics computes the count, sum, min, max, average
+	//and variance in a single pass, with a long sum that can't overflow silently:
+	public Statistics getCaloryStatistics(List<Dish> menu) {
+		Statistics statistics = menu.parallelStream().collect(Statistics.ofInt(Dish::getCalories));
+		return statistics;
+	}
 	
 	//5.6.2. Numeric ranges
 	//But range is exclusive, whereas rangeClosed is inclusive. Let’s look at an example:
@@ -341,6 +385,18 @@ public class WorkingWithStreams {
 	//split each line into words by calling the split method on line. Notice how you use flatMap to
 	//produce one flattened stream of words instead of multiple streams of words for each line. Finally,
 	//you count each distinct word in the stream by chaining the methods distinct and count.
+
+	//For multi-GB files the same count can be computed in parallel over a memory-mapped file,
+	//hashing the words straight from the bytes instead of creating a String per word:
+	public long getNumberOfWordsInAFileInParallel() {
+		long uniqueWords = 0;
+		try {
+			uniqueWords = UniqueWordCounter.count(Paths.get("data.txt"), Charset.defaultCharset());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return uniqueWords;
+	}
 	
 	//5.7.4. Streams from functions: creating infinite streams!
 	//The Streams API provides two static methods to generate a stream from a function:
@@ -355,6 +411,16 @@ public class WorkingWithStreams {
 	public void getStreamsByGenerate() {
 		Stream.generate(Math::random).limit(5).forEach(System.out::println);
 	}
+	//Neither of them splits well in parallel. Generators computes the nth element of a sequence
+	//directly, and draws random numbers from a SplittableRandom, so these split without walking the stream:
+	public long getSumOfEvenNumbersInParallel() {
+		long sum = Generators.longArithmetic(0, 2).parallel().limit(10_000_000).sum();
+		return sum;
+	}
+	public double getAverageOfRandomNumbersInParallel() {
+		double average = Generators.randomDoubles().parallel().limit(10_000_000).average().orElse(0);
+		return average;
+	}
 	
 	//5.8. Summary
 	//It’s been a long but rewarding chapter! You can now process collections more effectively. Indeed,